@@ -0,0 +1,78 @@
+#!/usr/bin/env bash
+#
+# Compiles the bgfx shader sources in src/main/resources/shaders/bgfx into the
+# binaries loaded at runtime, one directory per renderer.
+#
+# Usage: build/compile-shaders.sh [shader ...] [-- renderer ...]
+#
+#   BGFX_DIR  Checkout of bgfx, for src/bgfx_shader.sh and examples/common
+#   SHADERC   shaderc binary, defaults to shaderc on the PATH
+#
+# With no shaders given, every vs_*.sc and fs_*.sc is compiled. With no
+# renderers given, all of glsl, metal, dx9 and dx11 are built. The dx9 and dx11
+# profiles are compiled through the Direct3D compiler, so shaderc can only build
+# them on Windows (e.g. from Git Bash), build the others from Mac or Linux.
+#
+# Examples:
+#   BGFX_DIR=~/bgfx build/compile-shaders.sh
+#   BGFX_DIR=~/bgfx build/compile-shaders.sh vs_led_instanced vs_led_texture -- dx9 dx11
+
+set -e
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+SHADERS="$ROOT/src/main/resources/shaders"
+SHADERC="${SHADERC:-shaderc}"
+
+if [ -z "$BGFX_DIR" ] || [ ! -f "$BGFX_DIR/src/bgfx_shader.sh" ]; then
+  echo "BGFX_DIR must point to a bgfx checkout" >&2
+  exit 1
+fi
+if ! command -v "$SHADERC" > /dev/null; then
+  echo "shaderc not found, build it from bgfx or set SHADERC" >&2
+  exit 1
+fi
+
+NAMES=()
+while [ $# -gt 0 ] && [ "$1" != "--" ]; do
+  NAMES+=("$1")
+  shift
+done
+[ "$1" == "--" ] && shift
+RENDERERS=("$@")
+
+if [ ${#NAMES[@]} -eq 0 ]; then
+  for src in "$SHADERS"/bgfx/[vf]s_*.sc; do
+    NAMES+=("$(basename "$src" .sc)")
+  done
+fi
+if [ ${#RENDERERS[@]} -eq 0 ]; then
+  RENDERERS=(glsl metal dx9 dx11)
+fi
+
+for renderer in "${RENDERERS[@]}"; do
+  for name in "${NAMES[@]}"; do
+    case "$name" in
+      vs_*) type=vertex; hlsl=vs ;;
+      fs_*) type=fragment; hlsl=ps ;;
+      *) echo "Unknown shader type: $name" >&2; exit 1 ;;
+    esac
+    # NOTE: these match the profiles in bgfx's scripts/shader.mk
+    case "$renderer" in
+      glsl)  args=(--platform linux -p 120) ;;
+      metal) args=(--platform osx -p metal) ;;
+      dx9)   args=(--platform windows -p "${hlsl}_3_0" -O 3) ;;
+      dx11)  args=(--platform windows -p "${hlsl}_5_0" -O 3) ;;
+      *) echo "Unknown renderer: $renderer" >&2; exit 1 ;;
+    esac
+    mkdir -p "$SHADERS/$renderer"
+    echo "$renderer/$name.bin"
+    "$SHADERC" \
+      -f "$SHADERS/bgfx/$name.sc" \
+      -o "$SHADERS/$renderer/$name.bin" \
+      --type "$type" \
+      --varyingdef "$SHADERS/bgfx/varying.def.sc" \
+      -i "$BGFX_DIR/src" \
+      -i "$BGFX_DIR/examples/common" \
+      "${args[@]}"
+  done
+done
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.bgfx.BGFXMemory;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * A 2D texture with 4 bytes per texel whose contents are rewritten from the CPU,
+ * typically once per frame. Texels are written into the buffer returned by
+ * getTextureData() and pushed to the GPU by calling update().
+ */
+public class DynamicTexture {
+
+  public static final int BYTES_PER_TEXEL = 4;
+
+  private final ByteBuffer textureData;
+
+  private final short th;
+  private final int width;
+  private final int height;
+  private final StagingRing stagingRing;
+  private final ResourceTracker.Resource resource;
+
+  // Direct upload in progress, see beginUpdate()
+  private BGFXMemory pendingUpdate = null;
+  private int pendingY = 0;
+  private int pendingRows = 0;
+
+  public DynamicTexture(GLX glx, int width, int height) {
+    this(glx, width, height, BGFX_TEXTURE_FORMAT_RGBA8, BGFX_SAMPLER_POINT | BGFX_SAMPLER_UVW_CLAMP);
+  }
+
+  public DynamicTexture(GLX glx, int width, int height, int format, long flags) {
+    this.width = width;
+    this.height = height;
+    this.textureData = MemoryUtil.memCalloc(width * height * BYTES_PER_TEXEL);
+    this.th = bgfx_create_texture_2d(width, height, false, 1, format, flags, null);
+    this.stagingRing = new StagingRing(this.textureData.capacity(), StagingRing.DEFAULT_DEPTH);
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.TEXTURE, "DynamicTexture " + width + "x" + height, this.textureData.capacity());
+  }
+
+  public short getHandle() {
+    return this.th;
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  public ByteBuffer getTextureData() {
+    return this.textureData;
+  }
+
+  public void update() {
+    bgfx_update_texture_2d(this.th, 0, (byte) 0, 0, 0, this.width, this.height, this.stagingRing.stage(this.textureData), 0xffff);
+  }
+
+  /**
+   * Uploads only a band of full rows of the texture data to the GPU
+   *
+   * @param y First row to update
+   * @param rows Number of rows to update
+   */
+  public void update(int y, int rows) {
+    if (y < 0 || rows < 0 || y + rows > this.height) {
+      throw new IllegalArgumentException("Invalid DynamicTexture rows " + y + "+" + rows + " for texture of height " + this.height);
+    }
+    final int pitch = this.width * BYTES_PER_TEXEL;
+    ByteBuffer band = MemoryUtil.memByteBuffer(MemoryUtil.memAddress0(this.textureData) + y * pitch, rows * pitch);
+    bgfx_update_texture_2d(this.th, 0, (byte) 0, 0, y, this.width, rows, this.stagingRing.stage(band), 0xffff);
+  }
+
+  /**
+   * Begins an upload of a band of full rows that is written straight into staging
+   * memory, rather than copied from getTextureData(). This saves a copy for writers
+   * that rewrite every texel of the band. Data written this way is not reflected
+   * in getTextureData().
+   *
+   * @param y First row to update
+   * @param rows Number of rows to update
+   * @return Buffer covering exactly the band, to be completely filled before commitUpdate()
+   */
+  public ByteBuffer beginUpdate(int y, int rows) {
+    if (y < 0 || rows < 0 || y + rows > this.height) {
+      throw new IllegalArgumentException("Invalid DynamicTexture rows " + y + "+" + rows + " for texture of height " + this.height);
+    }
+    if (this.pendingUpdate != null) {
+      throw new IllegalStateException("DynamicTexture.beginUpdate() called twice without commitUpdate()");
+    }
+    this.pendingUpdate = this.stagingRing.allocate(rows * this.width * BYTES_PER_TEXEL);
+    this.pendingY = y;
+    this.pendingRows = rows;
+    return this.pendingUpdate.data();
+  }
+
+  /**
+   * Uploads the band started by beginUpdate()
+   */
+  public void commitUpdate() {
+    if (this.pendingUpdate == null) {
+      throw new IllegalStateException("DynamicTexture.commitUpdate() called without beginUpdate()");
+    }
+    bgfx_update_texture_2d(this.th, 0, (byte) 0, 0, this.pendingY, this.width, this.pendingRows, this.pendingUpdate, 0xffff);
+    this.pendingUpdate = null;
+  }
+
+  public void dispose() {
+    bgfx_destroy_texture(this.th);
+    MemoryUtil.memFree(this.textureData);
+    this.stagingRing.dispose();
+    this.resource.dispose();
+  }
+}
@@ -22,13 +22,28 @@ import static org.lwjgl.bgfx.BGFX.*;
 
 import java.nio.ByteBuffer;
 
+import org.lwjgl.bgfx.BGFXMemory;
 import org.lwjgl.system.MemoryUtil;
 
 public class DynamicVertexBuffer {
 
-  public static int ATTRIB_POSITION = 1 << 0;
-  public static int ATTRIB_COLOR0 = 1 << 1;
-  public static int ATTRIB_TEXCOORD0 = 1 << 2;
+  /**
+   * @deprecated Use VertexDeclaration.ATTRIB_POSITION
+   */
+  @Deprecated
+  public static int ATTRIB_POSITION = VertexDeclaration.ATTRIB_POSITION;
+
+  /**
+   * @deprecated Use VertexDeclaration.ATTRIB_COLOR0
+   */
+  @Deprecated
+  public static int ATTRIB_COLOR0 = VertexDeclaration.ATTRIB_COLOR0;
+
+  /**
+   * @deprecated Use VertexDeclaration.ATTRIB_TEXCOORD0
+   */
+  @Deprecated
+  public static int ATTRIB_TEXCOORD0 = VertexDeclaration.ATTRIB_TEXCOORD0;
 
   private final VertexDeclaration vertexDeclaration;
   private final ByteBuffer vertexData;
@@ -36,15 +51,63 @@ public class DynamicVertexBuffer {
   private final short vbh;
   private final int numVertices;
 
+  // Uploads are copied here so that vertexData may be rewritten while bgfx is
+  // still reading the previous upload
+  private final StagingRing stagingRing;
+
+  private final ResourceTracker.Resource resource;
+
+  // Direct upload in progress, see beginUpdate()
+  private BGFXMemory pendingUpdate = null;
+  private int pendingStartVertex = 0;
+
   public DynamicVertexBuffer(GLX glx, int numVertices) {
-    this(glx, numVertices, ATTRIB_POSITION | ATTRIB_COLOR0);
+    this(glx, numVertices, VertexDeclaration.ATTRIB_POSITION | VertexDeclaration.ATTRIB_COLOR0);
   }
 
   public DynamicVertexBuffer(GLX glx, int numVertices, int attributes) {
-    this.vertexDeclaration = new VertexDeclaration(glx, attributes);
+    this(glx, numVertices, attributes, StagingRing.DEFAULT_DEPTH);
+  }
+
+  /**
+   * Constructs a dynamic vertex buffer
+   *
+   * @param glx GLX instance
+   * @param numVertices Number of vertices
+   * @param attributes Vertex attributes
+   * @param stagingDepth Number of staging copies of the vertex data that may be in flight to the renderer
+   */
+  public DynamicVertexBuffer(GLX glx, int numVertices, int attributes, int stagingDepth) {
+    this.vertexDeclaration = VertexDeclaration.get(glx, attributes);
     this.vertexData = MemoryUtil.memAlloc(this.vertexDeclaration.getStride() * numVertices);
     this.vbh = bgfx_create_dynamic_vertex_buffer(numVertices, this.vertexDeclaration.getHandle(), BGFX_BUFFER_NONE);
     this.numVertices = numVertices;
+    this.stagingRing = new StagingRing(this.vertexData.capacity(), stagingDepth);
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.DYNAMIC_VERTEX_BUFFER, "DynamicVertexBuffer", this.vertexData.capacity());
+  }
+
+  /**
+   * Constructs a dynamic vertex buffer from data that has already been packed, for
+   * instance on a background thread. The buffer takes ownership of the data, which
+   * must have been allocated with MemoryUtil, and uploads it immediately.
+   *
+   * @param glx GLX instance
+   * @param vertexData Packed vertex data
+   * @param numVertices Number of vertices in the data
+   * @param attributes Vertex attributes
+   */
+  public DynamicVertexBuffer(GLX glx, ByteBuffer vertexData, int numVertices, int attributes) {
+    this.vertexDeclaration = VertexDeclaration.get(glx, attributes);
+    if (vertexData.remaining() != this.vertexDeclaration.getStride() * numVertices) {
+      this.vertexDeclaration.dispose();
+      throw new IllegalArgumentException("DynamicVertexBuffer data has " + vertexData.remaining() + " bytes, expected " + this.vertexDeclaration.getStride() * numVertices);
+    }
+    this.vertexData = vertexData;
+    this.vbh = bgfx_create_dynamic_vertex_buffer(numVertices, this.vertexDeclaration.getHandle(), BGFX_BUFFER_NONE);
+    this.numVertices = numVertices;
+    this.stagingRing = new StagingRing(this.vertexData.remaining(), StagingRing.DEFAULT_DEPTH);
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.DYNAMIC_VERTEX_BUFFER, "DynamicVertexBuffer", this.vertexData.remaining());
+    update();
   }
 
   public short getHandle() {
@@ -55,17 +118,72 @@ public class DynamicVertexBuffer {
     return this.numVertices;
   }
 
+  public VertexDeclaration getVertexDeclaration() {
+    return this.vertexDeclaration;
+  }
+
   public ByteBuffer getVertexData() {
     return this.vertexData;
   }
 
   public void update() {
-    bgfx_update_dynamic_vertex_buffer(this.vbh, 0, bgfx_make_ref(this.vertexData));
+    bgfx_update_dynamic_vertex_buffer(this.vbh, 0, this.stagingRing.stage(this.vertexData));
+  }
+
+  /**
+   * Uploads only a range of the vertex data to the GPU. The range is taken from
+   * the same offset in the buffer returned by getVertexData().
+   *
+   * @param startVertex First vertex to update
+   * @param count Number of vertices to update
+   */
+  public void update(int startVertex, int count) {
+    if (startVertex < 0 || count < 0 || startVertex + count > this.numVertices) {
+      throw new IllegalArgumentException("Invalid DynamicVertexBuffer range " + startVertex + "+" + count + " for buffer of " + this.numVertices + " vertices");
+    }
+    final int stride = this.vertexDeclaration.getStride();
+    ByteBuffer range = MemoryUtil.memByteBuffer(MemoryUtil.memAddress0(this.vertexData) + startVertex * stride, count * stride);
+    bgfx_update_dynamic_vertex_buffer(this.vbh, startVertex, this.stagingRing.stage(range));
+  }
+
+  /**
+   * Begins an upload of a range of vertices that is written straight into staging
+   * memory, rather than copied from getVertexData(). This saves a copy for writers
+   * that rewrite every byte of the range. Data written this way is not reflected
+   * in getVertexData().
+   *
+   * @param startVertex First vertex to update
+   * @param count Number of vertices to update
+   * @return Buffer covering exactly the range, to be completely filled before commitUpdate()
+   */
+  public ByteBuffer beginUpdate(int startVertex, int count) {
+    if (startVertex < 0 || count < 0 || startVertex + count > this.numVertices) {
+      throw new IllegalArgumentException("Invalid DynamicVertexBuffer range " + startVertex + "+" + count + " for buffer of " + this.numVertices + " vertices");
+    }
+    if (this.pendingUpdate != null) {
+      throw new IllegalStateException("DynamicVertexBuffer.beginUpdate() called twice without commitUpdate()");
+    }
+    this.pendingUpdate = this.stagingRing.allocate(count * this.vertexDeclaration.getStride());
+    this.pendingStartVertex = startVertex;
+    return this.pendingUpdate.data();
+  }
+
+  /**
+   * Uploads the range started by beginUpdate()
+   */
+  public void commitUpdate() {
+    if (this.pendingUpdate == null) {
+      throw new IllegalStateException("DynamicVertexBuffer.commitUpdate() called without beginUpdate()");
+    }
+    bgfx_update_dynamic_vertex_buffer(this.vbh, this.pendingStartVertex, this.pendingUpdate);
+    this.pendingUpdate = null;
   }
 
   public void dispose() {
     bgfx_destroy_dynamic_vertex_buffer(this.vbh);
     MemoryUtil.memFree(this.vertexData);
+    this.stagingRing.dispose();
     this.vertexDeclaration.dispose();
+    this.resource.dispose();
   }
 }
@@ -31,6 +31,7 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.lwjgl.bgfx.BGFX.*;
 import static org.lwjgl.bgfx.BGFXPlatform.*;
@@ -47,6 +48,7 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.Platform;
 import org.lwjgl.system.macosx.ObjCRuntime;
 
+import heronarts.glx.shader.ShaderCache;
 import heronarts.glx.shader.Shape;
 import heronarts.glx.shader.Tex2d;
 import heronarts.glx.ui.UI;
@@ -54,6 +56,7 @@ import heronarts.glx.ui.UIDialogBox;
 import heronarts.glx.ui.vg.VGraphics;
 import heronarts.lx.LX;
 import heronarts.lx.LXEngine;
+import heronarts.lx.LXLoopTask;
 import heronarts.lx.utils.LXUtils;
 
 public class GLX extends LX {
@@ -94,7 +97,83 @@ public class GLX extends LX {
   private final InputDispatch inputDispatch = new InputDispatch(this);
 
   public final UI ui;
-  public final LXEngine.Frame uiFrame;
+
+  /**
+   * Most recent engine LED frame available to the UI thread, refreshed at the
+   * start of each UI draw. Only to be read from the UI thread.
+   *
+   * @deprecated Use getUIFrame(), this field is reassigned whenever the engine
+   * hands off a new frame, so a retained reference goes stale
+   */
+  @Deprecated
+  public LXEngine.Frame uiFrame;
+
+  /**
+   * Lock-free triple buffer for handing LED frames from the engine thread to
+   * the UI thread. The engine thread fills its back slot and publishes it with
+   * an atomic swap, the UI thread swaps out whatever was most recently published.
+   * Neither side ever touches a slot that the other is using.
+   */
+  private class FrameExchange {
+
+    private class Slot {
+      private final LXEngine.Frame frame;
+      private long sequence = 0;
+
+      private Slot() {
+        this.frame = new LXEngine.Frame(GLX.this);
+        engine.getFrameNonThreadSafe(this.frame);
+      }
+    }
+
+    // Owned by the engine thread
+    private Slot back = new Slot();
+    private long engineSequence = 0;
+
+    // Owned by the UI thread
+    private Slot front = new Slot();
+
+    // Sequence of the last frame taken by the UI thread
+    private volatile long acquiredSequence = 0;
+
+    // Most recently published frame, up for grabs
+    private final AtomicReference<Slot> ready = new AtomicReference<Slot>(new Slot());
+
+    /**
+     * Invoked on the engine thread, publishes the latest completed engine frame
+     */
+    private void publish() {
+      // NOTE: the copy runs on the engine thread, so skip it until the UI thread
+      // has taken the previously published frame. The UI may then draw a frame
+      // up to one engine tick older than the newest, but the engine only pays
+      // for the copy once per frame the UI actually draws.
+      if (this.engineSequence > this.acquiredSequence) {
+        return;
+      }
+      // NOTE: the UI thread never calls copyFrameThreadSafe, so this lock is uncontended
+      engine.copyFrameThreadSafe(this.back.frame);
+      this.back.sequence = ++this.engineSequence;
+      this.back = this.ready.getAndSet(this.back);
+    }
+
+    /**
+     * Invoked on the UI thread, takes the newest published frame if there is one
+     *
+     * @return Whether the front frame changed
+     */
+    private boolean acquire() {
+      if (this.ready.get().sequence > this.front.sequence) {
+        this.front = this.ready.getAndSet(this.front);
+        this.acquiredSequence = this.front.sequence;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private final FrameExchange frameExchange;
+
+  private final LXLoopTask publishFrame;
 
   public final class Programs {
 
@@ -114,9 +193,35 @@ public class GLX extends LX {
 
   public final Programs program;
 
+  /**
+   * Shared shaders and programs for the active renderer
+   */
+  public final ShaderCache shaderCache;
+
+  /**
+   * Accounting of all live GPU resources
+   */
+  public final ResourceTracker resourceTracker;
+
+  /**
+   * Immediate-mode drawing of per-frame 3D geometry
+   */
+  public final TransientGeometry transientGeometry;
+
+  /**
+   * Per-frame allocation of bgfx view ids
+   */
+  public final ViewAllocator viewAllocator;
+
   public static class Flags extends LX.Flags {
     public String windowTitle = "GLX";
     public boolean useOpenGL = false;
+
+    /**
+     * Record the creation site of every GPU resource and report any that were
+     * not disposed at shutdown
+     */
+    public boolean debugResources = false;
   }
 
   public final Flags flags;
@@ -124,6 +229,7 @@ public class GLX extends LX {
   protected GLX(Flags flags) throws IOException {
     super(flags);
     this.flags = flags;
+    this.resourceTracker = new ResourceTracker(flags.debugResources);
 
     if (this.flags.useOpenGL) {
       this.bgfxRenderer = BGFX_RENDERER_TYPE_OPENGL;
@@ -139,14 +245,30 @@ public class GLX extends LX {
 
     initializeWindow();
     this.zZeroToOne = !bgfx_get_caps().homogeneousDepth();
+    this.viewAllocator = new ViewAllocator();
 
-    // Initialize global shader programs and VG library
+    // Point clouds are in every UI, get their texture loading in the background
+    Texture.prefetch("led.ktx");
+
+    // Initialize global shader programs and VG library, preloading the
+    // shaders that every UI uses
+    this.shaderCache = new ShaderCache(this).preload(
+      "vs_view2d", "fs_view2d",
+      "vs_shape", "fs_shape",
+      "vs_led", "fs_led"
+    );
     this.program = new Programs(this);
+    this.transientGeometry = new TransientGeometry(this);
     this.vg = new VGraphics(this);
 
     // Initialize LED frame buffer for the UI
-    this.uiFrame = new LXEngine.Frame(this);
-    this.engine.getFrameNonThreadSafe(this.uiFrame);
+    this.frameExchange = new FrameExchange();
+    this.uiFrame = this.frameExchange.front.frame;
+
+    // Engine loop tasks run at the top of each engine frame, by which point the
+    // previous frame has been fully rendered and is ready to hand off
+    this.publishFrame = (deltaMs) -> { this.frameExchange.publish(); };
+    this.engine.addLoopTask(this.publishFrame);
 
     // Create the UI system
     this.ui = buildUI();
@@ -176,6 +298,9 @@ public class GLX extends LX {
     // Shut down bgfx
     bgfx_shutdown();
 
+    // Nothing can be released by bgfx anymore
+    StagingRing.shutdown();
+
     // Free the window callbacks and destroy the window
     glfwFreeCallbacks(this.window);
     glfwDestroyWindow(this.window);
@@ -523,6 +648,7 @@ public class GLX extends LX {
     long now;
     int frameCount = 0;
     long drawNanos = 0;
+    long idleFrames = this.ui.profiler.idleFrames;
     boolean failed = false;
 
     while (!glfwWindowShouldClose(this.window)) {
@@ -542,7 +668,8 @@ public class GLX extends LX {
         }
       }
 
-      // Poll for input events
+      // Poll for input events. This waits for a bounded time, so an idle
+      // UI that skips its frames does not spin
       this.inputDispatch.poll();
 
       if (this.needsCursorUpdate) {
@@ -573,9 +700,10 @@ public class GLX extends LX {
         if (!failed && (++frameCount == FRAME_PERF_LOG)) {
           frameCount = 0;
           now = System.currentTimeMillis();
-          GLX.log("UI thread healthy, running at: " + FRAME_PERF_LOG * 1000f / (now - before) + "fps, average draw time: " + (drawNanos / FRAME_PERF_LOG / 1000) + "us");
+          GLX.log("UI thread healthy, running at: " + FRAME_PERF_LOG * 1000f / (now - before) + "fps, average draw time: " + (drawNanos / FRAME_PERF_LOG / 1000) + "us, idle frames: " + (this.ui.profiler.idleFrames - idleFrames));
           before = now;
           drawNanos = 0;
+          idleFrames = this.ui.profiler.idleFrames;
         }
       }
 
@@ -590,22 +718,56 @@ public class GLX extends LX {
   }
 
   private void draw() {
-    // Copy the latest engine-rendered LED frame
-    this.engine.copyFrameThreadSafe(this.uiFrame);
-    this.ui.draw();
-    bgfx_frame(false);
+    // Pick up the latest engine-rendered LED frame, if the engine has produced one
+    if (this.frameExchange.acquire()) {
+      this.uiFrame = this.frameExchange.front.frame;
+    }
+    if (this.ui.draw()) {
+      bgfx_frame(false);
+    }
+    // NOTE: otherwise nothing changed and nothing was submitted, skipping the
+    // frame entirely leaves the last presented one on screen
+  }
+
+  /**
+   * Returns the most recent engine LED frame available to the UI thread. The
+   * returned frame is swapped out whenever the engine publishes a new one, so
+   * this should be called again on each draw rather than retained.
+   *
+   * @return Latest engine frame for the UI
+   */
+  public LXEngine.Frame getUIFrame() {
+    return this.uiFrame;
+  }
+
+  /**
+   * Returns a sequence number for the UI frame, which increases every time a new
+   * engine frame is handed off to the UI. UI components that derive data from
+   * the UI frame may skip that work when the sequence has not changed.
+   *
+   * @return Monotonically increasing sequence number of UI frame contents
+   */
+  public long getUIFrameSequence() {
+    return this.frameExchange.front.sequence;
   }
 
   @Override
   public void dispose() {
     glfwDestroyCursor(this.handCursor);
+    this.engine.removeLoopTask(this.publishFrame);
     this.program.dispose();
+    this.transientGeometry.dispose();
 
     // NOTE: destroy the whole UI first, rip down all the listeners
     // before disposing of the engine itself
     this.ui.dispose();
+    this.shaderCache.dispose();
 
     super.dispose();
+
+    if (this.flags.debugResources) {
+      this.resourceTracker.reportUndisposed();
+    }
   }
 
   public void useHandCursor(boolean useHandCursor) {
@@ -24,11 +24,20 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
@@ -97,6 +106,31 @@ public class GLXUtils {
   }
 
   public static ByteBuffer loadShader(GLX glx, String name) throws IOException {
+    return loadResource(getShaderPath(glx, name));
+  }
+
+  /**
+   * Loads the compiled shader with the given name for the active renderer
+   *
+   * @param glx GLX instance
+   * @param name Shader name
+   * @return Shader binary, to be disposed by the caller
+   * @throws IOException If the shader could not be loaded
+   */
+  public static ResourceBuffer loadShaderBuffer(GLX glx, String name) throws IOException {
+    return loadResourceBuffer(getShaderPath(glx, name));
+  }
+
+  /**
+   * Gets the resource path of the compiled shader with the given name for the
+   * active renderer
+   *
+   * @param glx GLX instance
+   * @param name Shader name
+   * @return Resource path
+   * @throws IOException If there are no shaders for the active renderer
+   */
+  public static String getShaderPath(GLX glx, String name) throws IOException {
     String path = "shaders/";
     switch (glx.getRenderer()) {
     case BGFX_RENDERER_TYPE_DIRECT3D11:
@@ -115,7 +149,7 @@ public class GLXUtils {
     default:
       throw new IOException("No shaders supported for " + bgfx_get_renderer_name(glx.getRenderer()) + " renderer");
     }
-    return loadResource(path + name + ".bin");
+    return path + name + ".bin";
   }
 
   /**
@@ -147,34 +181,41 @@ public class GLXUtils {
    * @throws IOException If there is an error loading the resource
    */
   public static ByteBuffer loadResource(String resourcePath) throws IOException {
-    ByteBuffer resource = null;
     Path path = Paths.get("src/main/resources/" + resourcePath);
     if (Files.isReadable(path)) {
-      try (
-        SeekableByteChannel fc = Files.newByteChannel(path);
-      ) {
-        int totalBytes = (int) fc.size();
-        int readBytes = 0;
-        int read = 0;
-        resource = MemoryUtil.memAlloc(totalBytes);
-        do {
-          if ((read = fc.read(resource)) == -1) break;
-          readBytes += read;
-        } while (readBytes < totalBytes);
-        resource.flip();
-        return resource;
-      } catch (IOException iox) {
-        MemoryUtil.memFree(resource);
-        throw iox;
-      }
+      return readPath(path);
     }
+    return readURL(resourcePath);
+  }
 
+  private static ByteBuffer readPath(Path path) throws IOException {
+    ByteBuffer resource = null;
+    try (
+      SeekableByteChannel fc = Files.newByteChannel(path);
+    ) {
+      int totalBytes = (int) fc.size();
+      int readBytes = 0;
+      int read = 0;
+      resource = MemoryUtil.memAlloc(totalBytes);
+      do {
+        if ((read = fc.read(resource)) == -1) break;
+        readBytes += read;
+      } while (readBytes < totalBytes);
+      resource.flip();
+      return resource;
+    } catch (IOException iox) {
+      MemoryUtil.memFree(resource);
+      throw iox;
+    }
+  }
+
+  private static ByteBuffer readURL(String resourcePath) throws IOException {
     URL url = GLXUtils.class.getResource("/" + resourcePath);
     if (url == null) {
       throw new IOException("Resource not found: " + resourcePath);
     }
     int resourceSize = url.openConnection().getContentLength();
-    resource = MemoryUtil.memAlloc(resourceSize);
+    ByteBuffer resource = MemoryUtil.memAlloc(resourceSize);
     try (
       InputStream stream = url.openStream();
       ReadableByteChannel rbc = Channels.newChannel(stream);
@@ -193,27 +234,176 @@ public class GLXUtils {
     }
   }
 
-  public static ByteBuffer loadFile(String file) throws IOException {
-    ByteBuffer resource = null;
-    Path path = Paths.get(file);
+  /**
+   * Resource data that is either memory-mapped from the filesystem or read into
+   * memory allocated by MemoryUtil. Either way the data must stay referenced for
+   * as long as anything native may read it, and be disposed when done.
+   */
+  public static class ResourceBuffer {
+
+    public final String path;
+    private ByteBuffer buffer;
+    private final boolean mapped;
+
+    private ResourceBuffer(String path, ByteBuffer buffer, boolean mapped) {
+      this.path = path;
+      this.buffer = buffer;
+      this.mapped = mapped;
+    }
+
+    public ByteBuffer getBuffer() {
+      if (this.buffer == null) {
+        throw new IllegalStateException("ResourceBuffer already disposed: " + this.path);
+      }
+      return this.buffer;
+    }
+
+    public boolean isMapped() {
+      return this.mapped;
+    }
+
+    public void dispose() {
+      if (this.buffer != null) {
+        // NOTE: mapped buffers can't be unmapped explicitly, dropping the
+        // reference leaves that to the garbage collector
+        if (!this.mapped) {
+          MemoryUtil.memFree(this.buffer);
+        }
+        this.buffer = null;
+      }
+    }
+  }
+
+  /**
+   * A resource that may still be loading in the background
+   */
+  public static class PendingResource {
+
+    public final String path;
+    private final Future<ResourceBuffer> future;
+
+    private PendingResource(String path, Future<ResourceBuffer> future) {
+      this.path = path;
+      this.future = future;
+    }
+
+    public boolean isDone() {
+      return this.future.isDone();
+    }
+
+    /**
+     * Waits for the resource to finish loading
+     *
+     * @return Resource data, to be disposed by the caller
+     * @throws IOException If the resource could not be loaded
+     */
+    public ResourceBuffer get() throws IOException {
+      try {
+        return this.future.get();
+      } catch (ExecutionException x) {
+        if (x.getCause() instanceof IOException) {
+          throw (IOException) x.getCause();
+        }
+        throw new IOException("Error loading resource " + this.path, x.getCause());
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted loading resource " + this.path, x);
+      }
+    }
+  }
+
+  // Files smaller than this are read rather than mapped, mapping has a fixed
+  // cost that isn't worth paying for small icons
+  private static final long MAP_THRESHOLD = 16 * 1024;
+
+  private static final int LOADER_THREADS = 2;
+
+  private static ExecutorService loader = null;
+
+  private static final Map<String, PendingResource> prefetched = new ConcurrentHashMap<String, PendingResource>();
+
+  private static synchronized ExecutorService getLoader() {
+    if (loader == null) {
+      loader = Executors.newFixedThreadPool(LOADER_THREADS, (runnable) -> {
+        Thread thread = new Thread(runnable, "GLX Resource Loader");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return loader;
+  }
+
+  /**
+   * Begins loading the resource at the given path. Resources on the filesystem
+   * are memory-mapped straight away, resources in a JAR are read on a background
+   * thread. A resource that was prefetched is handed over rather than loaded again.
+   *
+   * @param resourcePath Path to the resource
+   * @return Pending resource
+   */
+  public static PendingResource loadResourceAsync(String resourcePath) {
+    PendingResource pending = prefetched.remove(resourcePath);
+    if (pending != null) {
+      return pending;
+    }
+    return startLoad(resourcePath);
+  }
+
+  private static PendingResource startLoad(String resourcePath) {
+    Path path = Paths.get("src/main/resources/" + resourcePath);
     if (Files.isReadable(path)) {
-      try (
-        SeekableByteChannel fc = Files.newByteChannel(path);
-      ) {
-        int totalBytes = (int) fc.size();
-        int readBytes = 0;
-        int read = 0;
-        resource = MemoryUtil.memAlloc(totalBytes);
-        do {
-          if ((read = fc.read(resource)) == -1) break;
-          readBytes += read;
-        } while (readBytes < totalBytes);
-        resource.flip();
-        return resource;
+      CompletableFuture<ResourceBuffer> future = new CompletableFuture<ResourceBuffer>();
+      try {
+        future.complete(mapPath(resourcePath, path));
       } catch (IOException iox) {
-        MemoryUtil.memFree(resource);
-        throw iox;
+        future.completeExceptionally(iox);
+      }
+      return new PendingResource(resourcePath, future);
+    }
+    return new PendingResource(resourcePath, getLoader().submit(() -> {
+      return new ResourceBuffer(resourcePath, readURL(resourcePath), false);
+    }));
+  }
+
+  /**
+   * Loads the resource at the given path, memory-mapping it if possible
+   *
+   * @param resourcePath Path to the resource
+   * @return Resource data, to be disposed by the caller
+   * @throws IOException If the resource could not be loaded
+   */
+  public static ResourceBuffer loadResourceBuffer(String resourcePath) throws IOException {
+    return loadResourceAsync(resourcePath).get();
+  }
+
+  /**
+   * Starts loading resources that will be needed shortly. A subsequent load of
+   * the same path picks up the result instead of loading it again. Every
+   * prefetched resource should be loaded, otherwise its data is never released.
+   *
+   * @param resourcePaths Paths to the resources
+   */
+  public static void prefetchResources(String ... resourcePaths) {
+    for (String resourcePath : resourcePaths) {
+      prefetched.computeIfAbsent(resourcePath, GLXUtils::startLoad);
+    }
+  }
+
+  private static ResourceBuffer mapPath(String resourcePath, Path path) throws IOException {
+    try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = fc.size();
+      if (size < MAP_THRESHOLD) {
+        return new ResourceBuffer(resourcePath, readPath(path), false);
       }
+      // NOTE: the mapping remains valid after the channel is closed
+      return new ResourceBuffer(resourcePath, fc.map(FileChannel.MapMode.READ_ONLY, 0, size), true);
+    }
+  }
+
+  public static ByteBuffer loadFile(String file) throws IOException {
+    Path path = Paths.get(file);
+    if (Files.isReadable(path)) {
+      return readPath(path);
     }
     return null;
   }
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Static index data, written once at construction by bufferData(). Indices are
+ * 16-bit unless constructed as 32-bit, which is needed to address more than
+ * 65536 vertices.
+ */
+public abstract class IndexBuffer {
+
+  private final ByteBuffer indexData;
+  private final short ibh;
+  private final int numIndices;
+  private final boolean index32;
+  private final ResourceTracker.Resource resource;
+
+  public IndexBuffer(GLX glx, int numIndices) {
+    this(glx, numIndices, false);
+  }
+
+  public IndexBuffer(GLX glx, int numIndices, boolean index32) {
+    this.index32 = index32;
+    this.indexData = MemoryUtil.memAlloc(numIndices * getIndexSize(index32));
+    bufferData(this.indexData);
+    this.indexData.flip();
+    this.ibh = bgfx_create_index_buffer(bgfx_make_ref(this.indexData), index32 ? BGFX_BUFFER_INDEX32 : BGFX_BUFFER_NONE);
+    this.numIndices = numIndices;
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.INDEX_BUFFER, getClass().getName(), this.indexData.remaining());
+  }
+
+  /**
+   * Whether indices of the given number of vertices need 32 bits
+   *
+   * @param numVertices Number of vertices that will be indexed
+   * @return true if 32-bit indices are required
+   */
+  public static boolean needsIndex32(int numVertices) {
+    return numVertices > 0x10000;
+  }
+
+  static int getIndexSize(boolean index32) {
+    return index32 ? Integer.BYTES : Short.BYTES;
+  }
+
+  /**
+   * Subclasses write the indices with putShort(), or putInt() if 32-bit
+   *
+   * @param buffer Buffer to write indices into
+   */
+  protected abstract void bufferData(ByteBuffer buffer);
+
+  public short getHandle() {
+    return this.ibh;
+  }
+
+  public int getNumIndices() {
+    return this.numIndices;
+  }
+
+  public boolean isIndex32() {
+    return this.index32;
+  }
+
+  public void dispose() {
+    bgfx_destroy_index_buffer(this.ibh);
+    MemoryUtil.memFree(this.indexData);
+    this.resource.dispose();
+  }
+}
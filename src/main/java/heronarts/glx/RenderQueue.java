@@ -0,0 +1,199 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import heronarts.glx.shader.ShaderProgram;
+
+/**
+ * Collects the draw calls made into a view over a frame and submits them in an
+ * order that minimizes program and state changes. Opaque items are grouped by
+ * program and state and then drawn front-to-back, so that the depth test rejects
+ * as much overdraw as possible. Transparent items, meaning those which blend
+ * without writing depth, are drawn after all opaque items and back-to-front, so
+ * that they blend correctly. Only to be used from the UI thread.
+ */
+public class RenderQueue {
+
+  /**
+   * Performs the actual submit of a queued item, binding whatever buffers and
+   * per-draw state it needs
+   */
+  @FunctionalInterface
+  public interface Submit {
+    public void submit(View view, long bgfxState);
+  }
+
+  /**
+   * Performs the submit of a range of a component's geometry. The range is stored
+   * in the pooled queue item, so that a component drawing many ranges per frame
+   * can pass the same instance for all of them without allocating.
+   */
+  @FunctionalInterface
+  public interface RangeSubmit {
+    public void submit(View view, long bgfxState, int start, int count, Object data);
+  }
+
+  private static class Item {
+    private long sortKey;
+    private long bgfxState;
+    private Submit submit;
+    private RangeSubmit rangeSubmit;
+    private int start;
+    private int count;
+    private Object data;
+  }
+
+  private static final Comparator<Item> SORT_KEY_ORDER = (a, b) -> Long.compareUnsigned(a.sortKey, b.sortKey);
+
+  private static final long TRANSPARENT_BIT = 1L << 63;
+  private static final int STATE_INDEX_BITS = 15;
+  private static final int MAX_STATE_INDEX = (1 << STATE_INDEX_BITS) - 1;
+
+  private final View view;
+
+  // Items are pooled and reused from frame to frame
+  private final List<Item> pool = new ArrayList<Item>();
+  private Item[] items = new Item[64];
+  private int numItems = 0;
+
+  // Distinct states are numbered per frame so they fit into the sort key
+  private final Map<Long, Integer> stateIndex = new HashMap<Long, Integer>();
+
+  RenderQueue(View view) {
+    this.view = view;
+  }
+
+  /**
+   * Queues a draw
+   *
+   * @param program Program that will be submitted
+   * @param bgfxState bgfx state for the draw
+   * @param depth Distance of the item from the camera, see View.getDepth()
+   * @param submit Performs the submit when the queue is flushed
+   * @return this
+   */
+  public RenderQueue add(ShaderProgram program, long bgfxState, float depth, Submit submit) {
+    addItem(program, bgfxState, depth).submit = submit;
+    return this;
+  }
+
+  /**
+   * Queues a draw of a range of geometry
+   *
+   * @param program Program that will be submitted
+   * @param bgfxState bgfx state for the draw
+   * @param depth Distance of the item from the camera, see View.getDepth()
+   * @param submit Performs the submit when the queue is flushed
+   * @param start Start of the range, passed back to submit
+   * @param count Size of the range, passed back to submit
+   * @param data Extra data passed back to submit, may be null
+   * @return this
+   */
+  public RenderQueue add(ShaderProgram program, long bgfxState, float depth, RangeSubmit submit, int start, int count, Object data) {
+    final Item item = addItem(program, bgfxState, depth);
+    item.rangeSubmit = submit;
+    item.start = start;
+    item.count = count;
+    item.data = data;
+    return this;
+  }
+
+  private Item addItem(ShaderProgram program, long bgfxState, float depth) {
+    final boolean transparent =
+      ((bgfxState & BGFX_STATE_BLEND_MASK) != 0) &&
+      ((bgfxState & BGFX_STATE_WRITE_Z) == 0);
+
+    Integer index = this.stateIndex.get(bgfxState);
+    if (index == null) {
+      index = Math.min(this.stateIndex.size(), MAX_STATE_INDEX);
+      this.stateIndex.put(bgfxState, index);
+    }
+
+    // Non-negative floats sort the same as their bits, behind the eye counts as 0
+    final long depthBits = Float.floatToRawIntBits(Math.max(0f, depth)) & 0xffffffffL;
+    final long programBits = program.getHandle() & 0xffffL;
+    final long sortKey;
+    if (transparent) {
+      // [1][back-to-front depth:32][program:16][state:15]
+      sortKey = TRANSPARENT_BIT | ((~depthBits & 0xffffffffL) << 31) | (programBits << STATE_INDEX_BITS) | index;
+    } else {
+      // [0][program:16][state:15][front-to-back depth:32]
+      sortKey = (programBits << 47) | ((long) index << 32) | depthBits;
+    }
+
+    if (this.numItems == this.items.length) {
+      this.items = Arrays.copyOf(this.items, 2 * this.items.length);
+    }
+    final Item item;
+    if (this.numItems < this.pool.size()) {
+      item = this.pool.get(this.numItems);
+    } else {
+      item = new Item();
+      this.pool.add(item);
+    }
+    item.sortKey = sortKey;
+    item.bgfxState = bgfxState;
+    this.items[this.numItems++] = item;
+    return item;
+  }
+
+  public int size() {
+    return this.numItems;
+  }
+
+  /**
+   * Sorts and submits all queued items, then clears the queue. The view is put
+   * into sequential mode so that bgfx keeps the sorted order.
+   */
+  public void flush() {
+    if (this.numItems > 0) {
+      bgfx_set_view_mode(this.view.getId(), BGFX_VIEW_MODE_SEQUENTIAL);
+      Arrays.sort(this.items, 0, this.numItems, SORT_KEY_ORDER);
+      for (int i = 0; i < this.numItems; ++i) {
+        final Item item = this.items[i];
+        if (item.rangeSubmit != null) {
+          item.rangeSubmit.submit(this.view, item.bgfxState, item.start, item.count, item.data);
+        } else {
+          item.submit.submit(this.view, item.bgfxState);
+        }
+      }
+    }
+    clear();
+  }
+
+  public void clear() {
+    for (int i = 0; i < this.numItems; ++i) {
+      this.items[i].submit = null;
+      this.items[i].rangeSubmit = null;
+      this.items[i].data = null;
+      this.items[i] = null;
+    }
+    this.numItems = 0;
+    this.stateIndex.clear();
+  }
+}
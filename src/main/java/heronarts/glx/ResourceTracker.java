@@ -0,0 +1,256 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.lwjgl.bgfx.BGFXStats;
+
+/**
+ * Accounting of the GPU resources allocated through GLX. Every buffer, texture,
+ * shader, program and framebuffer registers itself here on creation and is
+ * removed when disposed, so that live totals are available by category. In
+ * debug mode the creation site of each resource is recorded as well, and any
+ * resources that were never disposed are reported at shutdown.
+ */
+public class ResourceTracker {
+
+  public enum Category {
+    VERTEX_BUFFER("Vertex buffers"),
+    DYNAMIC_VERTEX_BUFFER("Dynamic vertex buffers"),
+    INDEX_BUFFER("Index buffers"),
+    TEXTURE("Textures"),
+    FRAMEBUFFER("Framebuffers"),
+    SHADER("Shaders"),
+    PROGRAM("Shader programs");
+
+    public final String label;
+
+    private Category(String label) {
+      this.label = label;
+    }
+
+    @Override
+    public String toString() {
+      return this.label;
+    }
+  }
+
+  /**
+   * A single tracked allocation, to be disposed along with the resource it describes
+   */
+  public class Resource {
+    public final Category category;
+    public final String name;
+    public final long bytes;
+
+    // Only captured in debug mode, filling in a stack trace is not free
+    private final Exception site;
+
+    private boolean disposed = false;
+
+    private Resource(Category category, String name, long bytes) {
+      this.category = category;
+      this.name = name;
+      this.bytes = bytes;
+      this.site = debug ? new Exception("Created " + category.label + ": " + name) : null;
+    }
+
+    /**
+     * Stack trace of the point at which this resource was created
+     *
+     * @return Creation stack trace, or null if not in debug mode
+     */
+    public StackTraceElement[] getCreationSite() {
+      return (this.site != null) ? this.site.getStackTrace() : null;
+    }
+
+    public boolean isDisposed() {
+      return this.disposed;
+    }
+
+    public void dispose() {
+      release(this);
+    }
+
+    @Override
+    public String toString() {
+      return this.category.label + ": " + this.name + " (" + formatBytes(this.bytes) + ")";
+    }
+  }
+
+  /**
+   * Snapshot of the renderer's own statistics for the most recent frame. Memory
+   * values are negative when the renderer does not report them.
+   */
+  public static class Stats {
+    public final int numDraw;
+    public final int numPrograms;
+    public final int numShaders;
+    public final int numTextures;
+    public final int numVertexLayouts;
+    public final long textureMemoryUsed;
+    public final long rtMemoryUsed;
+    public final long gpuMemoryUsed;
+    public final long gpuMemoryMax;
+    public final int transientVbUsed;
+    public final int transientIbUsed;
+    public final double cpuTimeMs;
+    public final double gpuTimeMs;
+
+    private Stats(BGFXStats stats) {
+      this.numDraw = stats.numDraw();
+      this.numPrograms = stats.numPrograms();
+      this.numShaders = stats.numShaders();
+      this.numTextures = stats.numTextures();
+      this.numVertexLayouts = stats.numVertexLayouts();
+      this.textureMemoryUsed = stats.textureMemoryUsed();
+      this.rtMemoryUsed = stats.rtMemoryUsed();
+      this.gpuMemoryUsed = stats.gpuMemoryUsed();
+      this.gpuMemoryMax = stats.gpuMemoryMax();
+      this.transientVbUsed = stats.transientVbUsed();
+      this.transientIbUsed = stats.transientIbUsed();
+      this.cpuTimeMs = 1000. * stats.cpuTimeFrame() / Math.max(1, stats.cpuTimerFreq());
+      this.gpuTimeMs = 1000. * (stats.gpuTimeEnd() - stats.gpuTimeBegin()) / Math.max(1, stats.gpuTimerFreq());
+    }
+  }
+
+  private final boolean debug;
+
+  private final Set<Resource> live = new LinkedHashSet<Resource>();
+  private final int[] counts = new int[Category.values().length];
+  private final long[] bytes = new long[Category.values().length];
+
+  ResourceTracker(boolean debug) {
+    this.debug = debug;
+  }
+
+  public boolean isDebug() {
+    return this.debug;
+  }
+
+  /**
+   * Registers a newly created resource
+   *
+   * @param category Resource category
+   * @param name Descriptive name of the resource
+   * @param bytes Approximate GPU memory used by the resource
+   * @return Tracked resource, which must be disposed when the resource is destroyed
+   */
+  public synchronized Resource register(Category category, String name, long bytes) {
+    Resource resource = new Resource(category, name, bytes);
+    this.live.add(resource);
+    ++this.counts[category.ordinal()];
+    this.bytes[category.ordinal()] += bytes;
+    return resource;
+  }
+
+  private synchronized void release(Resource resource) {
+    if (resource.disposed) {
+      GLX.error(new Exception(), "Resource disposed twice: " + resource);
+      return;
+    }
+    resource.disposed = true;
+    this.live.remove(resource);
+    --this.counts[resource.category.ordinal()];
+    this.bytes[resource.category.ordinal()] -= resource.bytes;
+  }
+
+  public synchronized int getCount(Category category) {
+    return this.counts[category.ordinal()];
+  }
+
+  public synchronized long getBytes(Category category) {
+    return this.bytes[category.ordinal()];
+  }
+
+  public synchronized int getTotalCount() {
+    return this.live.size();
+  }
+
+  public synchronized long getTotalBytes() {
+    long total = 0;
+    for (long bytes : this.bytes) {
+      total += bytes;
+    }
+    return total;
+  }
+
+  /**
+   * Gets a copy of the resources that are currently live, in order of creation
+   *
+   * @return Live resources
+   */
+  public synchronized List<Resource> getLiveResources() {
+    return new ArrayList<Resource>(this.live);
+  }
+
+  /**
+   * Reads the renderer's statistics for the most recent frame. Only to be called
+   * from the UI thread.
+   *
+   * @return Renderer statistics
+   */
+  public Stats getStats() {
+    return new Stats(bgfx_get_stats());
+  }
+
+  /**
+   * Logs the live totals for each category
+   */
+  public synchronized void logSummary() {
+    for (Category category : Category.values()) {
+      GLX.log(category.label + ": " + this.counts[category.ordinal()] + " (" + formatBytes(this.bytes[category.ordinal()]) + ")");
+    }
+  }
+
+  /**
+   * Reports every resource that has not been disposed, with its creation site
+   * if running in debug mode
+   *
+   * @return Number of undisposed resources
+   */
+  synchronized int reportUndisposed() {
+    if (!this.live.isEmpty()) {
+      GLX.error(this.live.size() + " GPU resources were not disposed, holding " + formatBytes(getTotalBytes()));
+      for (Resource resource : this.live) {
+        if (resource.site != null) {
+          GLX.error(resource.site, "Undisposed " + resource);
+        } else {
+          GLX.error("Undisposed " + resource);
+        }
+      }
+    }
+    return this.live.size();
+  }
+
+  private static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + "B";
+    } else if (bytes < 1024 * 1024) {
+      return String.format("%.1fKB", bytes / 1024.);
+    }
+    return String.format("%.1fMB", bytes / (1024. * 1024.));
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.bgfx.BGFXMemory;
+import org.lwjgl.bgfx.BGFXReleaseFunctionCallback;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Ring of staging buffers that CPU-side data is copied into before being handed
+ * to bgfx for upload. bgfx may read referenced memory any time up until it calls
+ * the release callback, which in multithreaded mode is after the render thread has
+ * consumed it, so the data owned by a dynamic buffer cannot be referenced directly
+ * if it is going to be rewritten for the next frame.
+ *
+ * Uploads are bump-allocated from the current staging buffer, and a staging buffer
+ * is rewritten only once everything handed out from it has been released. If every
+ * staging buffer is still in flight, bgfx allocates the memory instead. Writers that
+ * rewrite a whole range may fill the allocated memory directly, otherwise their
+ * data is copied in.
+ */
+class StagingRing {
+
+  public static final int DEFAULT_DEPTH = 3;
+
+  private static final AtomicLong nextId = new AtomicLong(0);
+
+  // Lookup from the callback's user data back to the staging buffer
+  private static final Map<Long, Staging> registry = new ConcurrentHashMap<Long, Staging>();
+
+  // NOTE: bgfx may call this for as long as it is running, so it is only freed
+  // by shutdown() once bgfx itself has been shut down
+  private static BGFXReleaseFunctionCallback release = null;
+
+  private static synchronized BGFXReleaseFunctionCallback getReleaseCallback() {
+    if (release == null) {
+      release = BGFXReleaseFunctionCallback.create((ptr, userData) -> {
+        Staging staging = registry.get(userData);
+        if (staging != null) {
+          staging.release();
+        }
+      });
+    }
+    return release;
+  }
+
+  /**
+   * Frees the release callback, must only be called after bgfx has been shut down
+   */
+  static synchronized void shutdown() {
+    if (release != null) {
+      release.free();
+      release = null;
+    }
+  }
+
+  private static class Staging {
+
+    private final long id = nextId.incrementAndGet();
+    private final ByteBuffer data;
+    private final AtomicInteger references = new AtomicInteger(0);
+    private final AtomicBoolean freed = new AtomicBoolean(false);
+    private volatile boolean disposed = false;
+    private int position = 0;
+
+    private Staging(int capacity) {
+      this.data = MemoryUtil.memAlloc(capacity);
+      registry.put(this.id, this);
+    }
+
+    private void release() {
+      if ((this.references.decrementAndGet() == 0) && this.disposed) {
+        free();
+      }
+    }
+
+    private void dispose() {
+      this.disposed = true;
+      if (this.references.get() == 0) {
+        free();
+      }
+    }
+
+    private void free() {
+      if (this.freed.compareAndSet(false, true)) {
+        registry.remove(this.id);
+        MemoryUtil.memFree(this.data);
+      }
+    }
+  }
+
+  private final Staging[] ring;
+  private final int capacity;
+  private int index = 0;
+
+  /**
+   * Constructs a staging ring. Staging buffers are allocated lazily, so with
+   * bgfx in single-threaded mode typically only one is ever used.
+   *
+   * @param capacity Size of each staging buffer, the largest single upload
+   * @param depth Number of staging buffers
+   */
+  StagingRing(int capacity, int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("StagingRing depth must be at least 1: " + depth);
+    }
+    this.ring = new Staging[depth];
+    this.capacity = capacity;
+  }
+
+  /**
+   * Makes a bgfx memory reference to a copy of the given data
+   *
+   * @param source Data to upload, from position to limit
+   * @return bgfx memory reference that is safe to pass to an update call
+   */
+  BGFXMemory stage(ByteBuffer source) {
+    final BGFXMemory memory = allocate(source.remaining());
+    MemoryUtil.memCopy(source, memory.data());
+    return memory;
+  }
+
+  /**
+   * Allocates memory for an upload, which the caller fills in through data()
+   * before passing it to an update call
+   *
+   * @param size Number of bytes, no more than the capacity
+   * @return bgfx memory reference that is safe to pass to an update call
+   */
+  BGFXMemory allocate(int size) {
+    if (size > this.capacity) {
+      throw new IllegalArgumentException("StagingRing allocation of " + size + " bytes exceeds capacity " + this.capacity);
+    }
+    Staging staging = getStaging(this.index);
+    if (staging.references.get() == 0) {
+      staging.position = 0;
+    }
+    if (staging.position + size > this.capacity) {
+      this.index = (this.index + 1) % this.ring.length;
+      staging = getStaging(this.index);
+      if (staging.references.get() != 0) {
+        // Everything is still in flight, let bgfx allocate it
+        return bgfx_alloc(size);
+      }
+      staging.position = 0;
+    }
+    ByteBuffer target = MemoryUtil.memByteBuffer(MemoryUtil.memAddress(staging.data) + staging.position, size);
+    staging.position += size;
+    staging.references.incrementAndGet();
+    return bgfx_make_ref_release(target, getReleaseCallback(), staging.id);
+  }
+
+  private Staging getStaging(int index) {
+    if (this.ring[index] == null) {
+      this.ring[index] = new Staging(this.capacity);
+    }
+    return this.ring[index];
+  }
+
+  void dispose() {
+    for (int i = 0; i < this.ring.length; ++i) {
+      if (this.ring[i] != null) {
+        // Memory still referenced by bgfx is freed when it is released
+        this.ring[i].dispose();
+        this.ring[i] = null;
+      }
+    }
+  }
+}
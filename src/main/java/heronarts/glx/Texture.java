@@ -19,31 +19,120 @@
 package heronarts.glx;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.bgfx.BGFXTextureInfo;
+import org.lwjgl.system.MemoryStack;
 import static org.lwjgl.bgfx.BGFX.*;
 
+/**
+ * A texture loaded from the textures resource folder. Textures are cached by
+ * path, so any number of Texture objects for the same resource share a single
+ * bgfx handle, which is destroyed when the last of them is disposed.
+ */
 public class Texture {
 
-  private final short th;
-  private final ByteBuffer textureData;
+  private static class Resource {
+    private final String path;
+    private final GLXUtils.ResourceBuffer textureData;
+    private final short th;
+    private final long storageSize;
+    private ResourceTracker.Resource tracked = null;
+    private int references = 0;
 
-  public Texture(String path) {
-    try {
-      this.textureData = GLXUtils.loadResource("textures/" + path);
-    } catch (IOException x) {
-      throw new RuntimeException(x);
+    private Resource(String path) {
+      this.path = path;
+      try {
+        this.textureData = GLXUtils.loadResourceBuffer("textures/" + path);
+      } catch (IOException x) {
+        throw new RuntimeException(x);
+      }
+      try (MemoryStack stack = MemoryStack.stackPush()) {
+        BGFXTextureInfo info = BGFXTextureInfo.malloc(stack);
+        this.th = bgfx_create_texture(bgfx_make_ref(this.textureData.getBuffer()), BGFX_TEXTURE_NONE, 0, info);
+        this.storageSize = info.storageSize();
+      }
+    }
+
+    private void track(GLX glx) {
+      // NOTE: glx is null when loaded through the deprecated constructor, such
+      // a texture is tracked once a Texture with a GLX instance shares it
+      if ((this.tracked == null) && (glx != null)) {
+        this.tracked = glx.resourceTracker.register(ResourceTracker.Category.TEXTURE, this.path, this.storageSize);
+      }
+    }
+
+    private void dispose() {
+      bgfx_destroy_texture(this.th);
+      this.textureData.dispose();
+      if (this.tracked != null) {
+        this.tracked.dispose();
+      }
+    }
+  }
+
+  private static final Map<String, Resource> cache = new HashMap<String, Resource>();
+
+  private static synchronized Resource acquire(GLX glx, String path) {
+    Resource resource = cache.get(path);
+    if (resource == null) {
+      resource = new Resource(path);
+      cache.put(path, resource);
+    }
+    resource.track(glx);
+    ++resource.references;
+    return resource;
+  }
+
+  private static synchronized void release(Resource resource) {
+    if (--resource.references == 0) {
+      cache.remove(resource.path);
+      resource.dispose();
+    }
+  }
+
+  private final Resource resource;
+  private boolean disposed = false;
+
+  /**
+   * Starts loading textures in the background, ahead of the Texture objects
+   * that will use them being constructed
+   *
+   * @param paths Texture paths
+   */
+  public static void prefetch(String ... paths) {
+    for (String path : paths) {
+      GLXUtils.prefetchResources("textures/" + path);
     }
-    this.th = bgfx_create_texture(bgfx_make_ref(this.textureData), BGFX_TEXTURE_NONE, 0, null);
+  }
+
+  /**
+   * @deprecated Use Texture(GLX, String). Textures loaded without a GLX instance
+   * are skipped by the resource tracker, and so missing from reportUndisposed(),
+   * unless the same path is also loaded through Texture(GLX, String)
+   *
+   * @param path Texture path
+   */
+  @Deprecated
+  public Texture(String path) {
+    this(null, path);
+  }
+
+  public Texture(GLX glx, String path) {
+    this.resource = acquire(glx, path);
   }
 
   public short getHandle() {
-    return this.th;
+    return this.resource.th;
   }
 
   public void dispose() {
-    bgfx_destroy_texture(this.th);
-    MemoryUtil.memFree(this.textureData);
+    // NOTE: guard against double-dispose, which would release a handle
+    // still shared by another Texture
+    if (!this.disposed) {
+      this.disposed = true;
+      release(this.resource);
+    }
   }
 }
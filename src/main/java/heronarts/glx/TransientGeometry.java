@@ -0,0 +1,361 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.joml.Matrix4f;
+import org.lwjgl.bgfx.BGFXTransientIndexBuffer;
+import org.lwjgl.bgfx.BGFXTransientVertexBuffer;
+import org.lwjgl.system.MemoryUtil;
+
+import heronarts.glx.shader.ShaderProgram;
+import heronarts.glx.shader.Shape;
+
+/**
+ * Immediate-mode drawing of simple 3D geometry, for overlays that change every
+ * frame such as selection boxes, outlines and axes. Geometry is accumulated on
+ * the CPU between begin() and end(), then copied into bgfx transient buffers and
+ * drawn with the Shape program, one draw call per color and primitive type.
+ * Nothing is allocated on the GPU that outlives the frame. Only to be used from
+ * the UI thread, while a UI3dContext is being drawn.
+ *
+ * <pre>
+ *   glx.transientGeometry.begin(view)
+ *     .color(0xffff0000)
+ *     .box(0, 0, 0, 10, 10, 10)
+ *     .color(0xff00ff00)
+ *     .line(0, 0, 0, 0, 20, 0)
+ *     .end();
+ * </pre>
+ */
+public class TransientGeometry {
+
+  private static final int INITIAL_VERTICES = 256;
+
+  // 16-bit indices are used for each batch
+  private static final int MAX_BATCH_VERTICES = 0x10000;
+
+  private static final int VERTEX_STRIDE = 3 * Float.BYTES;
+
+  private class Batch {
+    private final long primitiveState;
+    private ByteBuffer vertices = MemoryUtil.memAlloc(INITIAL_VERTICES * VERTEX_STRIDE);
+    private ByteBuffer indices = MemoryUtil.memAlloc(2 * INITIAL_VERTICES * Short.BYTES);
+    private int numVertices = 0;
+    private int numIndices = 0;
+
+    private Batch(long primitiveState) {
+      this.primitiveState = primitiveState;
+    }
+
+    /**
+     * Makes room for more geometry, flushing first if the batch would overflow
+     * 16-bit indices
+     *
+     * @return Index of the first new vertex
+     */
+    private int reserve(int vertexCount, int indexCount) {
+      if (this.numVertices + vertexCount > MAX_BATCH_VERTICES) {
+        flush(this);
+      }
+      final int vertexBytes = (this.numVertices + vertexCount) * VERTEX_STRIDE;
+      if (vertexBytes > this.vertices.capacity()) {
+        this.vertices = MemoryUtil.memRealloc(this.vertices, Math.max(vertexBytes, 2 * this.vertices.capacity()));
+      }
+      final int indexBytes = (this.numIndices + indexCount) * Short.BYTES;
+      if (indexBytes > this.indices.capacity()) {
+        this.indices = MemoryUtil.memRealloc(this.indices, Math.max(indexBytes, 2 * this.indices.capacity()));
+      }
+      return this.numVertices;
+    }
+
+    private void vertex(float x, float y, float z) {
+      final int offset = this.numVertices * VERTEX_STRIDE;
+      this.vertices.putFloat(offset, x);
+      this.vertices.putFloat(offset + Float.BYTES, y);
+      this.vertices.putFloat(offset + 2 * Float.BYTES, z);
+      ++this.numVertices;
+    }
+
+    private void index(int index) {
+      this.indices.putShort(this.numIndices * Short.BYTES, (short) index);
+      ++this.numIndices;
+    }
+
+    private void clear() {
+      this.numVertices = 0;
+      this.numIndices = 0;
+    }
+
+    private void dispose() {
+      MemoryUtil.memFree(this.vertices);
+      MemoryUtil.memFree(this.indices);
+    }
+  }
+
+  // Edges of a box with corners indexed by bits x=1, y=2, z=4
+  private static final int[] BOX_EDGES = {
+    0, 1, 2, 3, 4, 5, 6, 7,
+    0, 2, 1, 3, 4, 6, 5, 7,
+    0, 4, 1, 5, 2, 6, 3, 7
+  };
+
+  // Faces of a box, two triangles each
+  private static final int[] BOX_FACES = {
+    0, 2, 1, 1, 2, 3,
+    4, 5, 6, 5, 7, 6,
+    0, 1, 4, 1, 5, 4,
+    2, 6, 3, 3, 6, 7,
+    0, 4, 2, 2, 4, 6,
+    1, 3, 5, 3, 7, 5
+  };
+
+  private final Shape shape;
+  private final VertexDeclaration vertexDeclaration;
+  private final BGFXTransientVertexBuffer tvb = BGFXTransientVertexBuffer.calloc();
+  private final BGFXTransientIndexBuffer tib = BGFXTransientIndexBuffer.calloc();
+
+  private final Batch lines = new Batch(BGFX_STATE_PT_LINES);
+  private final Batch triangles = new Batch(0);
+
+  private final FloatBuffer modelMatrixBuf;
+  private final Matrix4f identity = new Matrix4f();
+
+  private View view = null;
+  private int color = 0xffffffff;
+  private long bgfxState = ShaderProgram.DEFAULT_BGFX_STATE;
+
+  // Overflow is logged at most this often, with the count dropped in between
+  private static final long OVERFLOW_LOG_INTERVAL_MS = 5000;
+  private long overflowLogMillis = 0;
+  private int overflowVertices = 0;
+
+  TransientGeometry(GLX glx) {
+    // NOTE: a private Shape instance so that its vertex buffer is never set, the
+    // program handle itself is shared through the ShaderCache
+    this.shape = new Shape(glx);
+    this.vertexDeclaration = VertexDeclaration.get(glx, VertexDeclaration.ATTRIB_POSITION);
+    this.modelMatrixBuf = MemoryUtil.memAllocFloat(16);
+  }
+
+  /**
+   * Begins drawing geometry in world space
+   *
+   * @param view View to draw into
+   * @return this
+   */
+  public TransientGeometry begin(View view) {
+    return begin(view, this.identity);
+  }
+
+  /**
+   * Begins drawing geometry with a model transform
+   *
+   * @param view View to draw into
+   * @param modelMatrix Transform applied to all geometry until end()
+   * @return this
+   */
+  public TransientGeometry begin(View view, Matrix4f modelMatrix) {
+    if (this.view != null) {
+      throw new IllegalStateException("TransientGeometry.begin() called again before end()");
+    }
+    this.view = view;
+    modelMatrix.get(this.modelMatrixBuf);
+    this.color = 0xffffffff;
+    this.bgfxState = ShaderProgram.DEFAULT_BGFX_STATE;
+    return this;
+  }
+
+  /**
+   * Sets the bgfx state used for subsequent geometry, the primitive type is
+   * set automatically
+   *
+   * @param bgfxState bgfx state flags
+   * @return this
+   */
+  public TransientGeometry setState(long bgfxState) {
+    if (this.bgfxState != bgfxState) {
+      flush();
+      this.bgfxState = bgfxState;
+    }
+    return this;
+  }
+
+  /**
+   * Sets the color used for subsequent geometry
+   *
+   * @param argb Color
+   * @return this
+   */
+  public TransientGeometry color(int argb) {
+    if (this.color != argb) {
+      flush();
+      this.color = argb;
+    }
+    return this;
+  }
+
+  public TransientGeometry line(float x1, float y1, float z1, float x2, float y2, float z2) {
+    assertDrawing();
+    final int base = this.lines.reserve(2, 2);
+    this.lines.vertex(x1, y1, z1);
+    this.lines.vertex(x2, y2, z2);
+    this.lines.index(base);
+    this.lines.index(base + 1);
+    return this;
+  }
+
+  /**
+   * Draws a filled quad, corners given in order around its edge
+   *
+   * @return this
+   */
+  public TransientGeometry quad(
+    float x0, float y0, float z0,
+    float x1, float y1, float z1,
+    float x2, float y2, float z2,
+    float x3, float y3, float z3) {
+    assertDrawing();
+    final int base = this.triangles.reserve(4, 6);
+    this.triangles.vertex(x0, y0, z0);
+    this.triangles.vertex(x1, y1, z1);
+    this.triangles.vertex(x2, y2, z2);
+    this.triangles.vertex(x3, y3, z3);
+    this.triangles.index(base);
+    this.triangles.index(base + 1);
+    this.triangles.index(base + 2);
+    this.triangles.index(base);
+    this.triangles.index(base + 2);
+    this.triangles.index(base + 3);
+    return this;
+  }
+
+  /**
+   * Draws the edges of an axis-aligned box
+   *
+   * @param x Minimum x
+   * @param y Minimum y
+   * @param z Minimum z
+   * @param width Size in x
+   * @param height Size in y
+   * @param depth Size in z
+   * @return this
+   */
+  public TransientGeometry box(float x, float y, float z, float width, float height, float depth) {
+    assertDrawing();
+    final int base = this.lines.reserve(8, BOX_EDGES.length);
+    boxVertices(this.lines, x, y, z, width, height, depth);
+    for (int index : BOX_EDGES) {
+      this.lines.index(base + index);
+    }
+    return this;
+  }
+
+  /**
+   * Draws a filled axis-aligned box
+   *
+   * @param x Minimum x
+   * @param y Minimum y
+   * @param z Minimum z
+   * @param width Size in x
+   * @param height Size in y
+   * @param depth Size in z
+   * @return this
+   */
+  public TransientGeometry fillBox(float x, float y, float z, float width, float height, float depth) {
+    assertDrawing();
+    final int base = this.triangles.reserve(8, BOX_FACES.length);
+    boxVertices(this.triangles, x, y, z, width, height, depth);
+    for (int index : BOX_FACES) {
+      this.triangles.index(base + index);
+    }
+    return this;
+  }
+
+  private void boxVertices(Batch batch, float x, float y, float z, float width, float height, float depth) {
+    for (int i = 0; i < 8; ++i) {
+      batch.vertex(
+        ((i & 1) != 0) ? x + width : x,
+        ((i & 2) != 0) ? y + height : y,
+        ((i & 4) != 0) ? z + depth : z
+      );
+    }
+  }
+
+  /**
+   * Submits all geometry drawn since begin()
+   */
+  public void end() {
+    assertDrawing();
+    flush();
+    this.view = null;
+  }
+
+  private void assertDrawing() {
+    if (this.view == null) {
+      throw new IllegalStateException("TransientGeometry must be drawn between begin() and end()");
+    }
+  }
+
+  private void flush() {
+    flush(this.lines);
+    flush(this.triangles);
+  }
+
+  private void flush(Batch batch) {
+    if (batch.numIndices == 0) {
+      batch.clear();
+      return;
+    }
+    if (!bgfx_alloc_transient_buffers(this.tvb, this.vertexDeclaration.getHandle(), batch.numVertices, this.tib, batch.numIndices, false)) {
+      // Out of transient buffer space for this frame, geometry is dropped
+      this.overflowVertices += batch.numVertices;
+      final long now = System.currentTimeMillis();
+      if (now - this.overflowLogMillis >= OVERFLOW_LOG_INTERVAL_MS) {
+        GLX.error("TransientGeometry ran out of transient buffer space, dropped " + this.overflowVertices + " vertices");
+        this.overflowLogMillis = now;
+        this.overflowVertices = 0;
+      }
+      batch.clear();
+      return;
+    }
+    MemoryUtil.memCopy(MemoryUtil.memAddress0(batch.vertices), MemoryUtil.memAddress(this.tvb.data()), batch.numVertices * VERTEX_STRIDE);
+    MemoryUtil.memCopy(MemoryUtil.memAddress0(batch.indices), MemoryUtil.memAddress(this.tib.data()), batch.numIndices * Short.BYTES);
+    bgfx_set_transform(this.modelMatrixBuf);
+    bgfx_set_transient_vertex_buffer(0, this.tvb, 0, batch.numVertices);
+    bgfx_set_transient_index_buffer(this.tib, 0, batch.numIndices);
+    this.shape.setFillColor(this.color);
+    this.shape.submit(this.view, this.bgfxState | batch.primitiveState);
+    batch.clear();
+  }
+
+  void dispose() {
+    this.lines.dispose();
+    this.triangles.dispose();
+    this.tvb.free();
+    this.tib.free();
+    MemoryUtil.memFree(this.modelMatrixBuf);
+    this.vertexDeclaration.dispose();
+    this.shape.dispose();
+  }
+}
@@ -30,18 +30,42 @@ public abstract class VertexBuffer {
   private final ByteBuffer vertexData;
   private final short vbh;
   private final int numVertices;
+  private final ResourceTracker.Resource resource;
 
   public VertexBuffer(GLX glx, int numVertices) {
     this(glx, numVertices, VertexDeclaration.ATTRIB_POSITION | VertexDeclaration.ATTRIB_TEXCOORD0);
   }
 
   public VertexBuffer(GLX glx, int numVertices, int attributes) {
-    this.vertexDeclaration = new VertexDeclaration(glx, attributes);
+    this.vertexDeclaration = VertexDeclaration.get(glx, attributes);
     this.vertexData = MemoryUtil.memAlloc(this.vertexDeclaration.getStride() * numVertices);
     bufferData(this.vertexData);
     this.vertexData.flip();
     this.vbh = bgfx_create_vertex_buffer(bgfx_make_ref(this.vertexData), this.vertexDeclaration.getHandle(), BGFX_BUFFER_NONE);
     this.numVertices = numVertices;
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.VERTEX_BUFFER, getClass().getName(), this.vertexData.remaining());
+  }
+
+  /**
+   * Constructs a vertex buffer from data that has already been packed, for instance
+   * on a background thread. The buffer takes ownership of the data, which must have
+   * been allocated with MemoryUtil and be ready to read. bufferData() is not invoked.
+   *
+   * @param glx GLX instance
+   * @param vertexData Packed vertex data
+   * @param numVertices Number of vertices in the data
+   * @param attributes Vertex attributes
+   */
+  protected VertexBuffer(GLX glx, ByteBuffer vertexData, int numVertices, int attributes) {
+    this.vertexDeclaration = VertexDeclaration.get(glx, attributes);
+    if (vertexData.remaining() != this.vertexDeclaration.getStride() * numVertices) {
+      this.vertexDeclaration.dispose();
+      throw new IllegalArgumentException("VertexBuffer data has " + vertexData.remaining() + " bytes, expected " + this.vertexDeclaration.getStride() * numVertices);
+    }
+    this.vertexData = vertexData;
+    this.vbh = bgfx_create_vertex_buffer(bgfx_make_ref(this.vertexData), this.vertexDeclaration.getHandle(), BGFX_BUFFER_NONE);
+    this.numVertices = numVertices;
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.VERTEX_BUFFER, getClass().getName(), this.vertexData.remaining());
   }
 
   protected abstract void bufferData(ByteBuffer buffer);
@@ -54,9 +78,14 @@ public abstract class VertexBuffer {
     return this.numVertices;
   }
 
+  public VertexDeclaration getVertexDeclaration() {
+    return this.vertexDeclaration;
+  }
+
   public void dispose() {
     bgfx_destroy_vertex_buffer(this.vbh);
     MemoryUtil.memFree(this.vertexData);
     this.vertexDeclaration.dispose();
+    this.resource.dispose();
   }
 }
@@ -21,30 +21,109 @@ package heronarts.glx;
 import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_COLOR0;
 import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_POSITION;
 import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TEXCOORD0;
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TEXCOORD6;
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TEXCOORD7;
 import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TYPE_FLOAT;
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TYPE_INT16;
 import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TYPE_UINT8;
 import static org.lwjgl.bgfx.BGFX.bgfx_vertex_layout_add;
 import static org.lwjgl.bgfx.BGFX.bgfx_vertex_layout_begin;
 import static org.lwjgl.bgfx.BGFX.bgfx_vertex_layout_end;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.lwjgl.bgfx.BGFXVertexLayout;
 
+/**
+ * Layout of vertex data. Within each vertex, attributes are packed in the order
+ * position, color, texture coordinates, instance data.
+ *
+ * Layouts are immutable, so buffers should share them via get(), which returns a
+ * reference-counted instance per renderer and attribute set. Each call to get()
+ * must be balanced by a call to dispose().
+ */
 public class VertexDeclaration {
 
   public static int ATTRIB_POSITION = 1 << 0;
   public static int ATTRIB_COLOR0 = 1 << 1;
   public static int ATTRIB_TEXCOORD0 = 1 << 2;
 
+  /**
+   * Per-instance data, bound via bgfx instance data and read as i_data0 in shaders
+   */
+  public static int ATTRIB_INSTANCE0 = 1 << 3;
+
+  /**
+   * Per-instance data, bound via bgfx instance data and read as i_data1 in shaders
+   */
+  public static int ATTRIB_INSTANCE1 = 1 << 4;
+
+  /**
+   * Position as 4 normalized signed 16-bit integers, read as a_position in [-1, 1].
+   * The fourth component is padding. Use a model transform to map back to world
+   * space.
+   */
+  public static int ATTRIB_POSITION_INT16 = 1 << 5;
+
+  /**
+   * Texture coordinates as 4 normalized unsigned bytes, read as a_texcoord0 in
+   * [0, 1]. The last two components are padding.
+   */
+  public static int ATTRIB_TEXCOORD0_UINT8 = 1 << 6;
+
+  private static final Map<Long, VertexDeclaration> registry = new HashMap<Long, VertexDeclaration>();
+
+  private static final long UNSHARED = -1;
+
+  /**
+   * Gets a shared vertex declaration for the given attributes
+   *
+   * @param glx GLX instance
+   * @param attributes Vertex attributes
+   * @return Shared vertex declaration, release with dispose()
+   */
+  public static VertexDeclaration get(GLX glx, int attributes) {
+    final long key = ((long) glx.getRenderer() << 32) | (attributes & 0xffffffffL);
+    synchronized (registry) {
+      VertexDeclaration vertexDeclaration = registry.get(key);
+      if (vertexDeclaration == null) {
+        vertexDeclaration = new VertexDeclaration(glx, attributes, key);
+        registry.put(key, vertexDeclaration);
+      }
+      ++vertexDeclaration.references;
+      return vertexDeclaration;
+    }
+  }
+
   private final BGFXVertexLayout handle;
   private int stride = 0;
 
+  private final long key;
+  private int references = 0;
+
+  /**
+   * Constructs a vertex declaration that is not shared, prefer get()
+   *
+   * @param glx GLX instance
+   * @param attributes Vertex attributes
+   */
   public VertexDeclaration(GLX glx, int attributes) {
+    this(glx, attributes, UNSHARED);
+  }
+
+  private VertexDeclaration(GLX glx, int attributes, long key) {
+    this.key = key;
     this.handle = BGFXVertexLayout.calloc();
     bgfx_vertex_layout_begin(this.handle, glx.getRenderer());
     if ((attributes & ATTRIB_POSITION) != 0) {
       bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_POSITION, 3, BGFX_ATTRIB_TYPE_FLOAT, false, false);
       this.stride += 3 * Float.BYTES;
     }
+    if ((attributes & ATTRIB_POSITION_INT16) != 0) {
+      bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_POSITION, 4, BGFX_ATTRIB_TYPE_INT16, true, false);
+      this.stride += 4 * Short.BYTES;
+    }
     if ((attributes & ATTRIB_COLOR0) != 0) {
       bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_COLOR0, 4, BGFX_ATTRIB_TYPE_UINT8, true, false);
       this.stride += 4;
@@ -53,6 +132,20 @@ public class VertexDeclaration {
       bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_TEXCOORD0, 2, BGFX_ATTRIB_TYPE_FLOAT, false, false);
       this.stride += 2 * Float.BYTES;
     }
+    if ((attributes & ATTRIB_TEXCOORD0_UINT8) != 0) {
+      bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_TEXCOORD0, 4, BGFX_ATTRIB_TYPE_UINT8, true, false);
+      this.stride += 4;
+    }
+    // NOTE: bgfx instance data is always a tightly packed series of vec4s, bound
+    // to TEXCOORD7 downwards. The layout is only used for its stride.
+    if ((attributes & ATTRIB_INSTANCE0) != 0) {
+      bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_TEXCOORD7, 4, BGFX_ATTRIB_TYPE_FLOAT, false, false);
+      this.stride += 4 * Float.BYTES;
+    }
+    if ((attributes & ATTRIB_INSTANCE1) != 0) {
+      bgfx_vertex_layout_add(this.handle, BGFX_ATTRIB_TEXCOORD6, 4, BGFX_ATTRIB_TYPE_FLOAT, false, false);
+      this.stride += 4 * Float.BYTES;
+    }
     bgfx_vertex_layout_end(this.handle);
   }
 
@@ -61,6 +154,14 @@ public class VertexDeclaration {
   }
 
   public void dispose() {
+    if (this.key != UNSHARED) {
+      synchronized (registry) {
+        if (--this.references > 0) {
+          return;
+        }
+        registry.remove(this.key);
+      }
+    }
     this.handle.free();
   }
 
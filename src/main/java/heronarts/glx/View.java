@@ -21,7 +21,9 @@ package heronarts.glx;
 import static org.lwjgl.bgfx.BGFX.*;
 
 import java.nio.FloatBuffer;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.joml.Vector3f;
 import org.lwjgl.system.MemoryUtil;
 
@@ -44,6 +46,11 @@ public class View {
   protected final Matrix4f projectionMatrix = new Matrix4f();
   protected final FloatBuffer projectionMatrixBuf;
 
+  private final Matrix4f viewProjectionMatrix = new Matrix4f();
+  private final FrustumIntersection frustum = new FrustumIntersection();
+
+  private RenderQueue renderQueue = null;
+
   /**
    * Constructs a default view of the entire framebuffer
    *
@@ -77,6 +84,7 @@ public class View {
     this.projectionMatrixBuf = MemoryUtil.memAllocFloat(16);
     this.viewMatrix.get(this.viewMatrixBuf);
     this.projectionMatrix.get(this.projectionMatrixBuf);
+    updateViewProjection();
   }
 
   public short getId() {
@@ -128,21 +136,42 @@ public class View {
     return this.width / (float) this.height;
   }
 
+  /**
+   * Current view matrix, which callers must not retain across frames
+   *
+   * @return View matrix
+   */
+  public Matrix4fc getViewMatrix() {
+    return this.viewMatrix;
+  }
+
+  /**
+   * Current projection matrix, which callers must not retain across frames
+   *
+   * @return Projection matrix
+   */
+  public Matrix4fc getProjectionMatrix() {
+    return this.projectionMatrix;
+  }
+
   public View setCamera(Vector3f eye, Vector3f center, Vector3f up) {
     this.viewMatrix.setLookAtLH(eye, center, up);
     this.viewMatrix.get(this.viewMatrixBuf);
+    updateViewProjection();
     return this;
   }
 
   public View setOrthographic(float x1, float x2, float y1, float y2, float z1, float z2) {
     this.projectionMatrix.setOrthoLH(x1, x2, y1, y2, z1, z2, this.glx.zZeroToOne);
     this.projectionMatrix.get(this.projectionMatrixBuf);
+    updateViewProjection();
     return this;
   }
 
   public View setPerspective(float radians, float aspectRatio, float zNear, float zFar) {
     this.projectionMatrix.setPerspectiveLH(radians, aspectRatio, zNear, zFar, this.glx.zZeroToOne);
     this.projectionMatrix.get(this.projectionMatrixBuf);
+    updateViewProjection();
     return this;
   }
 
@@ -159,9 +188,77 @@ public class View {
       this.projectionMatrix.setOrthoLH(0, width, height, 0, -1, 1, this.glx.zZeroToOne);
     }
     this.projectionMatrix.get(this.projectionMatrixBuf);
+    updateViewProjection();
     return this;
   }
 
+  /**
+   * Gets the view frustum for the current camera and projection, which may be
+   * used to cull geometry that is not visible. Note that the planes are extracted
+   * assuming a [-1, 1] depth range, so the near plane may be slightly conservative
+   * on renderers with a [0, 1] depth range. This is a pure read, so it is safe
+   * to call from draw worker threads so long as the camera and projection are
+   * not modified while they are drawing.
+   *
+   * @return View frustum in world space
+   */
+  public FrustumIntersection getFrustum() {
+    return this.frustum;
+  }
+
+  /**
+   * Gets the approximate number of pixels spanned by one world unit at the given
+   * position, under the current camera and projection.
+   *
+   * @param x World x position
+   * @param y World y position
+   * @param z World z position
+   * @return Pixels per world unit, or positive infinity if the position is at or
+   *   behind the eye
+   */
+  public float getPixelsPerUnit(float x, float y, float z) {
+    final Matrix4f vp = this.viewProjectionMatrix;
+    final float w = vp.m03() * x + vp.m13() * y + vp.m23() * z + vp.m33();
+    if (w <= 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    return .5f * this.height * this.projectionMatrix.m11() / w;
+  }
+
+  /**
+   * Gets the distance of a position in front of the camera, along the viewing
+   * direction
+   *
+   * @param x World x position
+   * @param y World y position
+   * @param z World z position
+   * @return View-space depth, negative if behind the eye
+   */
+  public float getDepth(float x, float y, float z) {
+    final Matrix4f v = this.viewMatrix;
+    return v.m02() * x + v.m12() * y + v.m22() * z + v.m32();
+  }
+
+  /**
+   * Gets the queue of sorted draws for this view, which is flushed by the owner
+   * of the view once everything has been drawn
+   *
+   * @return Render queue
+   */
+  public RenderQueue getRenderQueue() {
+    if (this.renderQueue == null) {
+      this.renderQueue = new RenderQueue(this);
+    }
+    return this.renderQueue;
+  }
+
+  // NOTE: computed eagerly whenever the camera or projection is set, on the UI
+  // thread, so that the accessors never write and draw workers can share a view
+  private void updateViewProjection() {
+    this.projectionMatrix.mul(this.viewMatrix, this.viewProjectionMatrix);
+    this.frustum.set(this.viewProjectionMatrix, false);
+  }
+
   /**
    * Sets the coordinates of this view in framebuffer coordinate space, independent of content
    * scaling.
@@ -202,6 +299,17 @@ public class View {
    * @return this
    */
   public View image(UI2dContext context) {
+    return image(context, BGFX_STATE_BLEND_ALPHA);
+  }
+
+  /**
+   * Draws the framebuffer texture of a 2D context into this view
+   *
+   * @param context Context to draw, which must already be rendered
+   * @param blend Blend state, e.g. BGFX_STATE_BLEND_ALPHA
+   * @return this
+   */
+  public View image(UI2dContext context, long blend) {
     if (this.glx.isOpenGL()) {
       // NOTE: buncha hacks here. OpenGL/Mac seems to have already taken framebuffer scaling into
       // acccount, so we just correct for UI zooming and the fact that Y is up on OpenGL framebuffers
@@ -211,7 +319,8 @@ public class View {
         context.getX() * this.glx.uiZoom,
         getHeight() / glx.getSystemContentScaleY() - context.getY() * this.glx.uiZoom,
         context.getWidth() * this.glx.uiZoom,
-        -context.getHeight() * this.glx.uiZoom
+        -context.getHeight() * this.glx.uiZoom,
+        blend
       );
     } else {
       // NOTE: context coordinates are in UI coordinate space. But the tex2d program
@@ -223,7 +332,8 @@ public class View {
         context.getX() * this.glx.getUIContentScaleX(),
         context.getY() * this.glx.getUIContentScaleY(),
         context.getWidth() * this.glx.getUIContentScaleX(),
-        context.getHeight() * this.glx.getUIContentScaleY()
+        context.getHeight() * this.glx.getUIContentScaleY(),
+        blend
       );
     }
     return this;
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+
+package heronarts.glx;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+/**
+ * Hands out bgfx view ids for a single frame. Every offscreen framebuffer, 3D
+ * context and the root overlay needs its own view, and the renderer only
+ * supports a fixed number of them. The allocator is reset at the top of each
+ * frame and ids are assigned in the order that views will be submitted.
+ */
+public class ViewAllocator {
+
+  private final int maxViews;
+
+  private int next = 0;
+
+  ViewAllocator() {
+    this.maxViews = bgfx_get_caps().limits().maxViews();
+  }
+
+  /**
+   * Releases all view ids, to be called at the start of a frame
+   *
+   * @return this
+   */
+  public ViewAllocator reset() {
+    this.next = 0;
+    return this;
+  }
+
+  /**
+   * Allocates the next view id for this frame
+   *
+   * @return View id
+   */
+  public short allocate() {
+    if (this.next >= this.maxViews) {
+      throw new IllegalStateException("No bgfx views remaining, all " + this.maxViews + " are allocated this frame");
+    }
+    return (short) this.next++;
+  }
+
+  /**
+   * Number of view ids that may still be allocated this frame
+   *
+   * @return Remaining view ids
+   */
+  public int remaining() {
+    return this.maxViews - this.next;
+  }
+
+  /**
+   * Total number of views supported by the renderer
+   *
+   * @return Maximum number of views per frame
+   */
+  public int getMaxViews() {
+    return this.maxViews;
+  }
+}
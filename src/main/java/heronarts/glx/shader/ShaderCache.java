@@ -0,0 +1,202 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+package heronarts.glx.shader;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import heronarts.glx.GLX;
+import heronarts.glx.GLXUtils;
+import heronarts.glx.ResourceTracker;
+
+/**
+ * Cache of compiled shaders and linked programs for the active renderer. Each
+ * shader binary is loaded once, and shader and program handles are shared and
+ * reference-counted, so that opening further views which use the same programs
+ * costs nothing. Every get must be balanced by a release. Access is synchronized,
+ * since components drawn on parallel draw workers may create programs lazily.
+ */
+public class ShaderCache {
+
+  private class Shader {
+    private final String name;
+    private final GLXUtils.ResourceBuffer code;
+    private final short handle;
+    private final ResourceTracker.Resource resource;
+    private int references = 0;
+
+    private Shader(String name) {
+      this.name = name;
+      try {
+        this.code = GLXUtils.loadShaderBuffer(glx, name);
+      } catch (IOException iox) {
+        throw new RuntimeException("Could not load shader " + name, iox);
+      }
+      this.handle = bgfx_create_shader(bgfx_make_ref(this.code.getBuffer()));
+      this.resource = glx.resourceTracker.register(ResourceTracker.Category.SHADER, name, this.code.getBuffer().remaining());
+    }
+
+    private void dispose() {
+      bgfx_destroy_shader(this.handle);
+      this.code.dispose();
+      this.resource.dispose();
+    }
+  }
+
+  private class Program {
+    private final String key;
+    private final Shader vertexShader;
+    private final Shader fragmentShader;
+    private final short handle;
+    private int references = 0;
+
+    private Program(String key, String vsName, String fsName) {
+      this.key = key;
+      this.vertexShader = getShader(vsName);
+      try {
+        this.fragmentShader = getShader(fsName);
+      } catch (RuntimeException x) {
+        releaseShader(this.vertexShader);
+        throw x;
+      }
+      // NOTE: shaders are shared, so they are not destroyed along with the program
+      this.handle = bgfx_create_program(this.vertexShader.handle, this.fragmentShader.handle, false);
+    }
+
+    private void dispose() {
+      bgfx_destroy_program(this.handle);
+      releaseShader(this.vertexShader);
+      releaseShader(this.fragmentShader);
+    }
+  }
+
+  private final GLX glx;
+
+  private final Map<String, Shader> shaders = new HashMap<String, Shader>();
+  private final Map<String, Program> programs = new HashMap<String, Program>();
+  private final Map<Short, Program> programsByHandle = new HashMap<Short, Program>();
+
+  // Shaders held by the cache itself after preloading
+  private final List<Shader> preloaded = new ArrayList<Shader>();
+
+  public ShaderCache(GLX glx) {
+    this.glx = glx;
+  }
+
+  /**
+   * Loads shaders ahead of time, so that programs using them can be created
+   * without touching the disk. Shaders which cannot be loaded are logged and
+   * skipped. Preloaded shaders are held until the cache is disposed.
+   *
+   * @param names Shader names
+   * @return this
+   */
+  public synchronized ShaderCache preload(String ... names) {
+    // Start reading all of the binaries before creating any of them
+    for (String name : names) {
+      try {
+        GLXUtils.prefetchResources(GLXUtils.getShaderPath(this.glx, name));
+      } catch (IOException iox) {
+        // Reported below when the shader itself fails to load
+      }
+    }
+    for (String name : names) {
+      try {
+        this.preloaded.add(getShader(name));
+      } catch (RuntimeException x) {
+        GLX.error(x, "Could not preload shader " + name);
+      }
+    }
+    return this;
+  }
+
+  private synchronized Shader getShader(String name) {
+    Shader shader = this.shaders.get(name);
+    if (shader == null) {
+      shader = new Shader(name);
+      this.shaders.put(name, shader);
+    }
+    ++shader.references;
+    return shader;
+  }
+
+  private synchronized void releaseShader(Shader shader) {
+    if (--shader.references == 0) {
+      this.shaders.remove(shader.name);
+      shader.dispose();
+    }
+  }
+
+  /**
+   * Gets a program handle for the given shaders, loading and linking them if
+   * this is the first use
+   *
+   * @param vsName Vertex shader name
+   * @param fsName Fragment shader name
+   * @return bgfx program handle, to be released with releaseProgram()
+   */
+  public synchronized short getProgram(String vsName, String fsName) {
+    final String key = vsName + "/" + fsName;
+    Program program = this.programs.get(key);
+    if (program == null) {
+      program = new Program(key, vsName, fsName);
+      this.programs.put(key, program);
+      this.programsByHandle.put(program.handle, program);
+    }
+    ++program.references;
+    return program.handle;
+  }
+
+  /**
+   * Releases a program handle obtained from getProgram()
+   *
+   * @param handle bgfx program handle
+   */
+  public synchronized void releaseProgram(short handle) {
+    Program program = this.programsByHandle.get(handle);
+    if (program == null) {
+      throw new IllegalStateException("Cannot release program not owned by ShaderCache: " + handle);
+    }
+    if (--program.references == 0) {
+      this.programs.remove(program.key);
+      this.programsByHandle.remove(handle);
+      program.dispose();
+    }
+  }
+
+  public synchronized void dispose() {
+    for (Shader shader : this.preloaded) {
+      releaseShader(shader);
+    }
+    this.preloaded.clear();
+    if (!this.programs.isEmpty()) {
+      GLX.error("ShaderCache disposed with programs still in use: " + this.programs.keySet());
+      for (Program program : this.programs.values()) {
+        program.dispose();
+      }
+      this.programs.clear();
+      this.programsByHandle.clear();
+    }
+  }
+}
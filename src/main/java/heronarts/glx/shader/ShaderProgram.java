@@ -20,12 +20,11 @@ package heronarts.glx.shader;
 
 import static org.lwjgl.bgfx.BGFX.*;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import org.lwjgl.system.MemoryUtil;
+import java.nio.FloatBuffer;
 
 import heronarts.glx.GLX;
-import heronarts.glx.GLXUtils;
+import heronarts.glx.IndexBuffer;
+import heronarts.glx.ResourceTracker;
 import heronarts.glx.VertexBuffer;
 import heronarts.glx.View;
 
@@ -37,23 +36,32 @@ public class ShaderProgram {
     BGFX_STATE_WRITE_Z |
     BGFX_STATE_BLEND_ALPHA;
 
-  private short handle;
-  private ByteBuffer vertexShaderCode;
-  private ByteBuffer fragmentShaderCode;
+  private final GLX glx;
+  private final short handle;
+  private final ResourceTracker.Resource resource;
   protected long bgfxState = DEFAULT_BGFX_STATE;
 
+  /**
+   * Submits through the implicit UI thread encoder
+   */
+  public static final long NO_ENCODER = 0;
+
+  // Encoder of the submit in progress
+  private long encoder = NO_ENCODER;
+
   public ShaderProgram(GLX glx, String vsName, String fsName) {
-    try {
-      this.vertexShaderCode = GLXUtils.loadShader(glx, vsName);
-      this.fragmentShaderCode = GLXUtils.loadShader(glx, fsName);
-    } catch (IOException iox) {
-      throw new RuntimeException(iox);
-    }
-    this.handle = bgfx_create_program(
-      bgfx_create_shader(bgfx_make_ref(this.vertexShaderCode)),
-      bgfx_create_shader(bgfx_make_ref(this.fragmentShaderCode)),
-      true
-    );
+    this.glx = glx;
+    this.handle = glx.shaderCache.getProgram(vsName, fsName);
+    // NOTE: program handles are shared, the memory is accounted for by the shaders
+    this.resource = glx.resourceTracker.register(ResourceTracker.Category.PROGRAM, vsName + "/" + fsName, 0);
+  }
+
+  public short getHandle() {
+    return this.handle;
+  }
+
+  public long getBgfxState() {
+    return this.bgfxState;
   }
 
   public void submit(View view) {
@@ -69,26 +77,128 @@ public class ShaderProgram {
   }
 
   public void submit(View view, VertexBuffer vertexBuffer, long bgfxState) {
-    bgfx_set_state(bgfxState, 0);
-    setUniforms(view);
-    if (vertexBuffer != null) {
-      bgfx_set_vertex_buffer(0, vertexBuffer.getHandle(), 0, vertexBuffer.getNumVertices());
+    submit(view, vertexBuffer, null, bgfxState);
+  }
+
+  public void submit(View view, VertexBuffer vertexBuffer, IndexBuffer indexBuffer) {
+    submit(view, vertexBuffer, indexBuffer, this.bgfxState);
+  }
+
+  public void submit(View view, VertexBuffer vertexBuffer, IndexBuffer indexBuffer, long bgfxState) {
+    submit(NO_ENCODER, view, vertexBuffer, indexBuffer, bgfxState);
+  }
+
+  public void submit(long encoder, View view) {
+    submit(encoder, view, null, null, this.bgfxState);
+  }
+
+  /**
+   * Submits into an explicit bgfx encoder, which allows drawing from a thread
+   * other than the UI thread. A program instance must only be submitted from
+   * one thread at a time.
+   *
+   * @param encoder Encoder from bgfx_encoder_begin(), or NO_ENCODER for the implicit encoder
+   * @param view View to submit to
+   * @param vertexBuffer Vertex buffer, may be null
+   * @param indexBuffer Index buffer, may be null
+   * @param bgfxState bgfx state flags
+   */
+  public void submit(long encoder, View view, VertexBuffer vertexBuffer, IndexBuffer indexBuffer, long bgfxState) {
+    this.encoder = encoder;
+    try {
+      if (encoder != NO_ENCODER) {
+        bgfx_encoder_set_state(encoder, bgfxState, 0);
+      } else {
+        bgfx_set_state(bgfxState, 0);
+      }
+      setUniforms(view);
+      if (vertexBuffer != null) {
+        setVertexBuffer(0, vertexBuffer.getHandle(), 0, vertexBuffer.getNumVertices());
+      }
+      if (indexBuffer != null) {
+        setIndexBuffer(indexBuffer.getHandle(), 0, indexBuffer.getNumIndices());
+      }
+      setVertexBuffers(view);
+      if (encoder != NO_ENCODER) {
+        bgfx_encoder_submit(encoder, view.getId(), this.handle, 0, BGFX_DISCARD_ALL);
+      } else {
+        bgfx_submit(view.getId(), this.handle, 0, BGFX_DISCARD_ALL);
+      }
+    } finally {
+      this.encoder = NO_ENCODER;
     }
-    setVertexBuffers(view);
-    bgfx_submit(view.getId(), this.handle, 0, BGFX_DISCARD_ALL);
   }
 
   protected void setVertexBuffers(View view) {
-    // Subclasses override to set additional vertex buffers
+    // Subclasses override to set additional vertex or index buffers
   }
 
   protected void setUniforms(View view) {
     // Subclasses override to set textures and uniforms
   }
 
+  // NOTE: the helpers below route to the encoder being submitted to, subclasses
+  // should use them from setVertexBuffers() and setUniforms() rather than calling
+  // the global bgfx functions, which are only valid on the UI thread
+
+  protected void setVertexBuffer(int stream, short handle, int startVertex, int numVertices) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_vertex_buffer(this.encoder, stream, handle, startVertex, numVertices);
+    } else {
+      bgfx_set_vertex_buffer(stream, handle, startVertex, numVertices);
+    }
+  }
+
+  protected void setDynamicVertexBuffer(int stream, short handle, int startVertex, int numVertices) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_dynamic_vertex_buffer(this.encoder, stream, handle, startVertex, numVertices);
+    } else {
+      bgfx_set_dynamic_vertex_buffer(stream, handle, startVertex, numVertices);
+    }
+  }
+
+  protected void setIndexBuffer(short handle, int firstIndex, int numIndices) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_index_buffer(this.encoder, handle, firstIndex, numIndices);
+    } else {
+      bgfx_set_index_buffer(handle, firstIndex, numIndices);
+    }
+  }
+
+  protected void setInstanceData(short dynamicVertexBufferHandle, int start, int num) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_instance_data_from_dynamic_vertex_buffer(this.encoder, dynamicVertexBufferHandle, start, num);
+    } else {
+      bgfx_set_instance_data_from_dynamic_vertex_buffer(dynamicVertexBufferHandle, start, num);
+    }
+  }
+
+  protected void setTexture(int stage, short uniform, short texture, int flags) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_texture(this.encoder, stage, uniform, texture, flags);
+    } else {
+      bgfx_set_texture(stage, uniform, texture, flags);
+    }
+  }
+
+  protected void setUniform(short uniform, FloatBuffer value, int num) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_uniform(this.encoder, uniform, value, num);
+    } else {
+      bgfx_set_uniform(uniform, value, num);
+    }
+  }
+
+  protected void setTransform(FloatBuffer matrix) {
+    if (this.encoder != NO_ENCODER) {
+      bgfx_encoder_set_transform(this.encoder, matrix);
+    } else {
+      bgfx_set_transform(matrix);
+    }
+  }
+
   public void dispose() {
-    bgfx_destroy_program(this.handle);
-    MemoryUtil.memFree(this.vertexShaderCode);
-    MemoryUtil.memFree(this.fragmentShaderCode);
+    this.glx.shaderCache.releaseProgram(this.handle);
+    this.resource.dispose();
   }
 }
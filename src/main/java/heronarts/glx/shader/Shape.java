@@ -21,8 +21,6 @@ package heronarts.glx.shader;
 import static org.lwjgl.bgfx.BGFX.BGFX_UNIFORM_TYPE_VEC4;
 import static org.lwjgl.bgfx.BGFX.bgfx_create_uniform;
 import static org.lwjgl.bgfx.BGFX.bgfx_destroy_uniform;
-import static org.lwjgl.bgfx.BGFX.bgfx_set_uniform;
-import static org.lwjgl.bgfx.BGFX.bgfx_set_vertex_buffer;
 
 import java.nio.FloatBuffer;
 
@@ -61,13 +59,13 @@ public class Shape extends ShaderProgram {
   @Override
   protected void setVertexBuffers(View view) {
     if (this.vertexBuffer != null) {
-      bgfx_set_vertex_buffer(0, this.vertexBuffer.getHandle(), 0, this.vertexBuffer.getNumVertices());
+      setVertexBuffer(0, this.vertexBuffer.getHandle(), 0, this.vertexBuffer.getNumVertices());
     }
   }
 
   @Override
   protected void setUniforms(View view) {
-    bgfx_set_uniform(this.uniformFillColor, this.fillColorBuffer, 1);
+    setUniform(this.uniformFillColor, this.fillColorBuffer, 1);
   }
 
   @Override
@@ -20,7 +20,6 @@ package heronarts.glx.shader;
 
 import static org.lwjgl.bgfx.BGFX.*;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
@@ -29,13 +28,29 @@ import org.lwjgl.bgfx.BGFXVertexLayout;
 import org.lwjgl.system.MemoryUtil;
 
 import heronarts.glx.GLX;
-import heronarts.glx.GLXUtils;
 import heronarts.glx.Texture;
 import heronarts.glx.VertexBuffer;
 import heronarts.glx.View;
 
 public class Tex2d {
 
+  /**
+   * Blends straight-alpha textures into a transparent target such that the
+   * result holds premultiplied color, for layers that are composited later
+   */
+  public static final long BLEND_COMPOSITE = BGFX_STATE_BLEND_FUNC_SEPARATE(
+    BGFX_STATE_BLEND_SRC_ALPHA, BGFX_STATE_BLEND_INV_SRC_ALPHA,
+    BGFX_STATE_BLEND_ONE, BGFX_STATE_BLEND_INV_SRC_ALPHA
+  );
+
+  /**
+   * Blends a texture with premultiplied color, such as a composited layer
+   */
+  public static final long BLEND_PREMULTIPLIED = BGFX_STATE_BLEND_FUNC(
+    BGFX_STATE_BLEND_ONE, BGFX_STATE_BLEND_INV_SRC_ALPHA
+  );
+
+  private final GLX glx;
   private BGFXVertexLayout vertexLayout;
   private short program;
   private short uniformTexture;
@@ -43,9 +58,6 @@ public class Tex2d {
   private ByteBuffer vertexBuffer;
   private short vbh;
 
-  private ByteBuffer vsCode;
-  private ByteBuffer fsCode;
-
   protected final Matrix4f modelMatrix = new Matrix4f();
   protected final FloatBuffer modelMatrixBuf;
 
@@ -65,6 +77,7 @@ public class Tex2d {
   };
 
   public Tex2d(GLX glx) {
+    this.glx = glx;
 
     this.modelMatrixBuf = MemoryUtil.memAllocFloat(16);
     this.modelMatrix.get(this.modelMatrixBuf);
@@ -88,17 +101,9 @@ public class Tex2d {
     this.vbh = bgfx_create_vertex_buffer(
       bgfx_make_ref(this.vertexBuffer), this.vertexLayout, BGFX_BUFFER_NONE);
 
-    try {
-      this.vsCode = GLXUtils.loadShader(glx, "vs_view2d");
-      this.fsCode = GLXUtils.loadShader(glx, "fs_view2d");
-      this.program = bgfx_create_program(
-        bgfx_create_shader(bgfx_make_ref(this.vsCode)),
-        bgfx_create_shader(bgfx_make_ref(this.fsCode)), true);
-      this.uniformTexture = bgfx_create_uniform("s_texColor",
-        BGFX_UNIFORM_TYPE_SAMPLER, 1);
-    } catch (IOException iox) {
-      throw new RuntimeException(iox);
-    }
+    this.program = glx.shaderCache.getProgram("vs_view2d", "fs_view2d");
+    this.uniformTexture = bgfx_create_uniform("s_texColor",
+      BGFX_UNIFORM_TYPE_SAMPLER, 1);
   }
 
   public void submit(View view, Texture texture, VertexBuffer vertexBuffer) {
@@ -114,12 +119,27 @@ public class Tex2d {
   }
 
   public void submit(View view, short texHandle, float x, float y, float w, float h) {
+    submit(view, texHandle, x, y, w, h, BGFX_STATE_BLEND_ALPHA);
+  }
+
+  /**
+   * Draws a texture into a rectangle of the view
+   *
+   * @param view View to draw into
+   * @param texHandle Texture handle
+   * @param x Left position
+   * @param y Top position
+   * @param w Width
+   * @param h Height
+   * @param blend Blend state, e.g. BGFX_STATE_BLEND_ALPHA
+   */
+  public void submit(View view, short texHandle, float x, float y, float w, float h, long blend) {
     this.modelMatrix.identity().translate(x, y, 0).scale(w, h, 1);
     this.modelMatrix.get(this.modelMatrixBuf);
     bgfx_set_transform(this.modelMatrixBuf);
     bgfx_set_texture(0, this.uniformTexture, texHandle, 0xffffffff);
     bgfx_set_state(BGFX_STATE_WRITE_RGB | BGFX_STATE_WRITE_A
-      | BGFX_STATE_WRITE_Z | BGFX_STATE_BLEND_ALPHA | BGFX_STATE_PT_TRISTRIP,
+      | BGFX_STATE_WRITE_Z | blend | BGFX_STATE_PT_TRISTRIP,
       0);
     bgfx_set_vertex_buffer(0, this.vbh, 0, VERTEX_BUFFER_DATA.length);
     bgfx_submit(view.getId(), this.program, 0, BGFX_DISCARD_ALL);
@@ -127,12 +147,10 @@ public class Tex2d {
 
   public void dispose() {
     MemoryUtil.memFree(this.vertexBuffer);
-    MemoryUtil.memFree(this.vsCode);
-    MemoryUtil.memFree(this.fsCode);
     this.vertexLayout.free();
     MemoryUtil.memFree(this.modelMatrixBuf);
     bgfx_destroy_uniform(this.uniformTexture);
-    bgfx_destroy_program(this.program);
+    this.glx.shaderCache.releaseProgram(this.program);
   }
 
 }
\ No newline at end of file
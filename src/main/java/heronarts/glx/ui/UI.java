@@ -20,6 +20,7 @@ package heronarts.glx.ui;
 
 import heronarts.glx.GLX;
 import heronarts.glx.View;
+import heronarts.glx.ViewAllocator;
 import heronarts.glx.event.Event;
 import heronarts.glx.event.KeyEvent;
 import heronarts.glx.event.MouseEvent;
@@ -38,9 +39,11 @@ import heronarts.lx.parameter.StringParameter;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.lwjgl.bgfx.BGFX.*;
 
@@ -62,12 +65,25 @@ public class UI {
 
     private final View view;
 
+    // NOTE: not used on OpenGL, whose framebuffer coordinate hacks in
+    // View.image() do not carry over to a composite
+    private final UICompositeLayer compositeLayer;
+
     private UIRoot() {
       this.ui = UI.this;
       this.view = new View(this.ui.lx);
       this.view.setClearFlags(BGFX_CLEAR_DEPTH | BGFX_CLEAR_STENCIL);
       this.view.setClearColor(0);
       this.view.setScreenOrtho();
+      this.compositeLayer = this.ui.lx.isOpenGL() ? null : new UICompositeLayer(this.ui.lx);
+    }
+
+    @Override
+    public void dispose() {
+      if (this.compositeLayer != null) {
+        this.compositeLayer.dispose();
+      }
+      super.dispose();
     }
 
     protected void resize() {
@@ -259,15 +275,200 @@ public class UI {
       return null;
     }
 
-    // Limit the number of nanovg buffers we'll render in a single pass
-    private static final int MAX_NVG_VIEWS_PER_PASS = 30;
+    // Number of consecutive frames a dirty context may be deferred before it
+    // is reported as starved and jumps ahead of everything else
+    private static final int STARVED_FRAMES = 30;
 
     private final Stack<UI2dContext> renderStack = new Stack<UI2dContext>();
+    private final List<UI2dContext> renderSchedule = new ArrayList<UI2dContext>();
     private final List<UI2dContext> drawList = new ArrayList<UI2dContext>();
+    private final List<UI3dContext> draw3dList = new ArrayList<UI3dContext>();
+
+    // Top-level layers as of the last drawn frame, with visibility and bounds
+    private final List<UIObject> drawnLayers = new ArrayList<UIObject>();
+    private float[] drawnLayerBounds = new float[0];
+
+    private final Comparator<UI2dContext> renderPriority = (c1, c2) -> {
+      // Starved contexts first, so that nothing waits forever
+      boolean starved1 = c1.deferredFrames >= STARVED_FRAMES;
+      boolean starved2 = c2.deferredFrames >= STARVED_FRAMES;
+      if (starved1 != starved2) {
+        return starved1 ? -1 : 1;
+      }
+      // Then what is actually on screen
+      boolean onscreen1 = isOnscreen(c1);
+      boolean onscreen2 = isOnscreen(c2);
+      if (onscreen1 != onscreen2) {
+        return onscreen1 ? -1 : 1;
+      }
+      // Then whatever holds keyboard focus
+      if (c1.hasFocus != c2.hasFocus) {
+        return c1.hasFocus ? -1 : 1;
+      }
+      // Then the most recently interacted with
+      if (c1.lastInteractionMillis != c2.lastInteractionMillis) {
+        return Long.compare(c2.lastInteractionMillis, c1.lastInteractionMillis);
+      }
+      // Then whatever has been waiting the longest, falling back to tree order
+      if (c1.deferredFrames != c2.deferredFrames) {
+        return Integer.compare(c2.deferredFrames, c1.deferredFrames);
+      }
+      return Integer.compare(c1.renderOrder, c2.renderOrder);
+    };
+
+    private boolean isOnscreen(UI2dContext context) {
+      UIObject object = context;
+      while (object instanceof UI2dComponent) {
+        if ((object instanceof UI2dContext) && ((UI2dContext) object).isOffscreen) {
+          return false;
+        }
+        object = object.parent;
+      }
+      return true;
+    }
+
+    private UI2dContext getDirtyAncestor(UI2dContext context) {
+      UIObject object = context.parent;
+      while (object instanceof UI2dComponent) {
+        if ((object instanceof UI2dContext) && (((UI2dContext) object).renderOrder >= 0)) {
+          return (UI2dContext) object;
+        }
+        object = object.parent;
+      }
+      return null;
+    }
+
+    /**
+     * Determines which of the dirty contexts on the render stack are rendered
+     * this frame. When there are more than the budget allows, the rest are
+     * deferred to subsequent frames in priority order.
+     *
+     * @param budget Number of contexts that may be rendered
+     */
+    private void scheduleRenders(int budget) {
+      if (maxContextRendersPerFrame > 0) {
+        budget = Math.min(budget, maxContextRendersPerFrame);
+      }
+      final int numDirty = this.renderStack.size();
+      if (numDirty <= budget) {
+        for (UI2dContext context : this.renderStack) {
+          context.renderScheduled = true;
+        }
+        return;
+      }
+
+      // The stack is in tree pre-order, record that for tie-breaks and lookups
+      for (int i = 0; i < numDirty; ++i) {
+        UI2dContext context = this.renderStack.get(i);
+        context.renderOrder = i;
+        context.renderScheduled = false;
+      }
+      this.renderSchedule.clear();
+      this.renderSchedule.addAll(this.renderStack);
+      this.renderSchedule.sort(this.renderPriority);
+      for (int i = 0; i < budget; ++i) {
+        this.renderSchedule.get(i).renderScheduled = true;
+      }
+
+      // NOTE: rendering a context blits the framebuffers of nested contexts and
+      // clears the flags that would bring it back to blit them again. So a
+      // context can only render once all of its dirty descendants have. Walking
+      // the stack backwards visits children before their parents.
+      for (int i = numDirty - 1; i >= 0; --i) {
+        UI2dContext context = this.renderStack.get(i);
+        if (!context.renderScheduled) {
+          UI2dContext ancestor = getDirtyAncestor(context);
+          if (ancestor != null) {
+            ancestor.renderScheduled = false;
+          }
+        }
+      }
+
+      for (UI2dContext context : this.renderStack) {
+        context.renderOrder = -1;
+      }
+    }
+
+    private boolean isLayerVisible(UIObject layer) {
+      if ((layer instanceof UI2dContext) && ((UI2dContext) layer).isOffscreen) {
+        return false;
+      }
+      return layer.isVisible();
+    }
+
+    /**
+     * Whether the top-level layers were added, removed, re-ordered, moved,
+     * resized or hidden since the last drawn frame
+     *
+     * @return true if the layers changed
+     */
+    private boolean layersChanged() {
+      int index = 0;
+      for (UIObject child : this.mutableChildren) {
+        if ((index >= this.drawnLayers.size()) || (this.drawnLayers.get(index) != child)) {
+          return true;
+        }
+        final int b = 5 * index;
+        if (
+          (this.drawnLayerBounds[b] != (isLayerVisible(child) ? 1 : 0)) ||
+          (this.drawnLayerBounds[b+1] != child.getX()) ||
+          (this.drawnLayerBounds[b+2] != child.getY()) ||
+          (this.drawnLayerBounds[b+3] != child.getWidth()) ||
+          (this.drawnLayerBounds[b+4] != child.getHeight())) {
+          return true;
+        }
+        ++index;
+      }
+      return index != this.drawnLayers.size();
+    }
+
+    /**
+     * Whether anything has changed that requires a new frame, given that no
+     * component was redrawn. Checks for contexts still waiting on a deferred
+     * render, changes to the top-level layers, and 3d scenes that changed.
+     *
+     * @return true if a frame needs to be drawn
+     */
+    private boolean needsFrame() {
+      if ((profiler.deferredContexts > 0) || layersChanged()) {
+        return true;
+      }
+      for (UIObject child : this.mutableChildren) {
+        if ((child instanceof UI3dContext) && ((UI3dContext) child).needsDraw()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void updateDrawnLayers() {
+      this.drawnLayers.clear();
+      for (UIObject child : this.mutableChildren) {
+        this.drawnLayers.add(child);
+      }
+      final int numLayers = this.drawnLayers.size();
+      if (this.drawnLayerBounds.length < 5 * numLayers) {
+        this.drawnLayerBounds = new float[5 * numLayers];
+      }
+      for (int i = 0; i < numLayers; ++i) {
+        final UIObject layer = this.drawnLayers.get(i);
+        final int b = 5 * i;
+        this.drawnLayerBounds[b] = isLayerVisible(layer) ? 1 : 0;
+        this.drawnLayerBounds[b+1] = layer.getX();
+        this.drawnLayerBounds[b+2] = layer.getY();
+        this.drawnLayerBounds[b+3] = layer.getWidth();
+        this.drawnLayerBounds[b+4] = layer.getHeight();
+      }
+    }
 
     public void draw() {
       this.renderStack.clear();
       this.drawList.clear();
+      this.draw3dList.clear();
+
+      // Any change to the layer arrangement requires a fresh composite
+      boolean recomposite = layersChanged();
+      updateDrawnLayers();
 
       // First pass, we determine which UI2dContexts need rendering, and push
       // them all onto a stack. Each will need its own BGFX view because they have
@@ -279,41 +480,85 @@ public class UI {
         if (child instanceof UI2dContext) {
           ((UI2dContext) child).populateRenderStack(renderStack);
           this.drawList.add(((UI2dContext) child));
+        } else if (child instanceof UI3dContext) {
+          this.draw3dList.add((UI3dContext) child);
         }
       }
 
-      // Now we have all of our UI2dContexts ready to go, render all of them
-      // as necessary.
-      short viewId = 0;
-      while (!renderStack.isEmpty() && (viewId < MAX_NVG_VIEWS_PER_PASS)) {
-        renderStack.pop().setView(viewId++).render(vg);
+      // Every 3d context, the composite layer and the root overlay need a view
+      // of their own, the rest are available for rendering the UI2dContexts
+      final ViewAllocator views = this.ui.lx.viewAllocator.reset();
+      scheduleRenders(views.remaining() - this.draw3dList.size() - 2);
+
+      // Render the scheduled contexts, popping so that children render before
+      // the parents that they are nested in
+      int deferred = 0;
+      int starved = 0;
+      while (!this.renderStack.isEmpty()) {
+        UI2dContext context = this.renderStack.pop();
+        if (context.renderScheduled) {
+          context.renderScheduled = false;
+          context.deferredFrames = 0;
+          context.setView(views.allocate()).render(vg);
+        } else {
+          ++deferred;
+          if (++context.deferredFrames >= STARVED_FRAMES) {
+            ++starved;
+            if (context.deferredFrames == STARVED_FRAMES) {
+              GLX.log("UI2dContext render has been deferred for " + STARVED_FRAMES + " frames: " + context);
+            }
+          }
+        }
       }
+      profiler.deferredContexts = deferred;
+      profiler.starvedContexts = starved;
 
       // Draw any 3d contexts
-      for (UIObject child : this.mutableChildren) {
-        if (child instanceof UI3dContext) {
-          UI3dContext context3d = (UI3dContext) child;
-          context3d.view.setId(viewId++);
-          context3d.draw(this.ui, context3d.view);
-        }
+      for (UI3dContext context3d : this.draw3dList) {
+        context3d.view.setId(views.allocate());
+        context3d.draw(this.ui, context3d.view);
       }
 
       // Finally, draw all 2d overlays onto the root view. Note that we don't
       // iterate over mutableChildren here because it could have changed. Instead
       // we use the drawList that we compiled above when we were preparing the
       // UI2dContext objects for rendering.
-      this.view.bind(viewId++);
-      for (UI2dContext child : this.drawList) {
-        child.draw(this.ui, this.view);
+      if ((this.compositeLayer != null) && this.compositeLayer.resize(this.view)) {
+        // A rebuilt layer has lost its contents
+        recomposite = true;
+      }
+      if ((this.compositeLayer != null) && this.compositeLayer.isValid()) {
+        // The overlays are composited into a persistent layer, which is only
+        // redone when one of them was rendered or the arrangement changed
+        if (!recomposite) {
+          for (UI2dContext child : this.drawList) {
+            if (child.needsBlit && isLayerVisible(child)) {
+              recomposite = true;
+              break;
+            }
+          }
+        }
+        if (recomposite) {
+          this.compositeLayer.composite(this.ui, views.allocate(), this.drawList);
+          ++profiler.composites;
+        }
+        this.view.bind(views.allocate());
+        this.compositeLayer.draw(this.view);
+      } else {
+        this.view.bind(views.allocate());
+        for (UI2dContext child : this.drawList) {
+          child.draw(this.ui, this.view);
+        }
       }
     }
   }
 
   /**
-   * Redraw may be called from any thread
+   * Redraw may be called from any thread. Each component's redrawQueued flag
+   * keeps it in here at most once, so enqueueing is constant time and lock-free.
    */
-  private final List<UI2dComponent> threadSafeRedrawQueue =
-    Collections.synchronizedList(new ArrayList<UI2dComponent>());
+  private final Queue<UI2dComponent> threadSafeRedrawQueue =
+    new ConcurrentLinkedQueue<UI2dComponent>();
 
   /**
    * Objects to redraw on current pass thru animation thread
@@ -323,6 +568,26 @@ public class UI {
 
   public class Profiler {
     public long drawNanos = 0;
+
+    /**
+     * Number of frames skipped since startup because nothing had changed
+     */
+    public long idleFrames = 0;
+
+    /**
+     * Number of times the 2d overlays were re-composited since startup
+     */
+    public long composites = 0;
+
+    /**
+     * Number of dirty UI2dContexts whose render was deferred on the last frame
+     */
+    public int deferredContexts = 0;
+
+    /**
+     * Number of those that have been waiting for a render for many frames
+     */
+    public int starvedContexts = 0;
   }
 
   public final Profiler profiler = new Profiler();
@@ -338,9 +603,16 @@ public class UI {
 
   protected CoordinateSystem coordinateSystem = CoordinateSystem.LEFT_HANDED;
 
+  private int maxContextRendersPerFrame = 0;
+
   private static final long INIT_RUN = -1;
   private long lastMillis = INIT_RUN;
 
+  private volatile boolean frameRequested = true;
+
+  // Damage of the context being rendered, when only part of it is
+  UI2dContext.Damage renderDamage = null;
+
   private UIEventHandler topLevelKeyEventHandler = null;
 
   private class UIContextOverlay extends UI2dContext {
@@ -577,6 +849,22 @@ public class UI {
     return this;
   }
 
+  /**
+   * Limits the number of offscreen UI2dContexts that are rendered in a single
+   * frame, the rest are spread over subsequent frames in priority order. By
+   * default only the number of available bgfx views is a limit.
+   *
+   * @param maxContextRendersPerFrame Maximum renders per frame, or 0 for no limit
+   * @return this
+   */
+  public UI setMaxContextRendersPerFrame(int maxContextRendersPerFrame) {
+    if (maxContextRendersPerFrame < 0) {
+      throw new IllegalArgumentException("Max context renders per frame may not be negative: " + maxContextRendersPerFrame);
+    }
+    this.maxContextRendersPerFrame = maxContextRendersPerFrame;
+    return this;
+  }
+
   public UI setCoordinateSystem(CoordinateSystem coordinateSystem) {
     this.coordinateSystem = coordinateSystem;
     return this;
@@ -799,7 +1087,9 @@ public class UI {
     // to avoid contention on this synchronized list between the UI and engine threads.
     // adding the same container to be redrawn loads of times slows down. keeping the
     // redraw list short is better.
-    if (!this.threadSafeRedrawQueue.contains(object)) {
+    // NOTE: the queue is lock-free now, the redrawQueued flag does this check in
+    // constant time rather than scanning the queue
+    if (object.redrawQueued.compareAndSet(false, true)) {
       this.threadSafeRedrawQueue.add(object);
     }
   }
@@ -823,12 +1113,29 @@ public class UI {
   public void resize() {
     this.root.resize();
     onResize();
+    requestFrame();
   }
 
   /**
-   * Draws the UI
+   * Requests that the next frame is drawn even if no component has been
+   * redrawn, e.g. because the window contents were lost. May be called from
+   * any thread.
+   *
+   * @return this
    */
-  public final void draw() {
+  public UI requestFrame() {
+    this.frameRequested = true;
+    return this;
+  }
+
+  /**
+   * Draws the UI. Loop tasks and redraws are always processed, but when
+   * nothing has changed since the last frame no views are submitted at all
+   * and the previously presented frame remains current.
+   *
+   * @return Whether a frame was drawn and needs to be submitted
+   */
+  public final boolean draw() {
 
     beginDraw();
 
@@ -847,20 +1154,35 @@ public class UI {
 
     // Iterate through all objects that need redraw state marked
     this.glfwThreadRedrawList.clear();
-    synchronized (this.threadSafeRedrawQueue) {
-      this.glfwThreadRedrawList.addAll(this.threadSafeRedrawQueue);
-      this.threadSafeRedrawQueue.clear();
+    UI2dComponent queued;
+    while ((queued = this.threadSafeRedrawQueue.poll()) != null) {
+      this.glfwThreadRedrawList.add(queued);
+    }
+    // NOTE: flags are only cleared once the queue is drained, so nothing can be
+    // queued twice or keep the drain going. Clearing before redrawing means that
+    // a redraw requested from here on is queued again for next frame, not lost.
+    for (UI2dComponent object : this.glfwThreadRedrawList) {
+      object.redrawQueued.set(false);
     }
     for (UI2dComponent object : this.glfwThreadRedrawList) {
       object._redraw();
     }
 
-    // Draw from the root
-    this.root.draw();
+    // Skip the frame entirely if there is nothing new to show
+    boolean needsFrame = this.frameRequested || !this.glfwThreadRedrawList.isEmpty() || this.root.needsFrame();
+    if (needsFrame) {
+      this.frameRequested = false;
+
+      // Draw from the root
+      this.root.draw();
+    } else {
+      ++this.profiler.idleFrames;
+    }
 
     endDraw();
 
     this.profiler.drawNanos = System.nanoTime() - drawStart;
+    return needsFrame;
   }
 
   protected void beginDraw() {
@@ -19,6 +19,7 @@
 package heronarts.glx.ui;
 
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import heronarts.glx.event.Event;
 import heronarts.glx.ui.vg.VGraphics;
@@ -98,6 +99,9 @@ public abstract class UI2dComponent extends UIObject {
   boolean childNeedsRedraw = true;
   boolean needsBlit = false;
 
+  // Set while this component sits in the UI's redraw queue, may be touched by any thread
+  final AtomicBoolean redrawQueued = new AtomicBoolean(false);
+
   public final LXParameterListener redraw = (p) -> { redraw(); };
 
   protected UI2dComponent() {
@@ -1041,6 +1045,24 @@ public abstract class UI2dComponent extends UIObject {
       p2d.childNeedsRedraw = true;
       p = p2d.parent;
     }
+
+    // Record the area we cover as damaged in the context we render into. That
+    // context is blitted whole into the next one up, and so on.
+    float dx = 0, dy = 0;
+    float dw = this.width, dh = this.height;
+    UI2dComponent component = this;
+    while (component.parent instanceof UI2dComponent) {
+      UI2dComponent parent2d = (UI2dComponent) component.parent;
+      dx += component.x + parent2d.scrollX;
+      dy += component.y + parent2d.scrollY;
+      if (parent2d instanceof UI2dContext) {
+        ((UI2dContext) parent2d).damage.add(dx, dy, dw, dh);
+        dx = dy = 0;
+        dw = parent2d.width;
+        dh = parent2d.height;
+      }
+      component = parent2d;
+    }
   }
 
   /**
@@ -1050,6 +1072,9 @@ public abstract class UI2dComponent extends UIObject {
   private final void _redrawChildren() {
     this.needsRedraw = true;
     this.childNeedsRedraw = false;
+    if (this instanceof UI2dContext) {
+      ((UI2dContext) this).damage.setFull();
+    }
     for (UIObject child : this.mutableChildren) {
       if ((child instanceof UI2dContext) && (((UI2dContext) child).isOffscreen)) {
         // If this is an offscreen 2d context that didn't get a direct redraw
@@ -1061,6 +1086,22 @@ public abstract class UI2dComponent extends UIObject {
     }
   }
 
+  /**
+   * Internal helper. Clears the redraw flags of a subtree that was skipped
+   * because it lies outside the damaged area. Nested contexts keep theirs,
+   * they are rendered on their own.
+   */
+  private void _clearRedraw() {
+    if (this instanceof UI2dContext) {
+      return;
+    }
+    this.needsRedraw = false;
+    this.childNeedsRedraw = false;
+    for (UIObject child : this.mutableChildren) {
+      ((UI2dComponent) child)._clearRedraw();
+    }
+  }
+
   protected final void populateRenderStack(Stack<UI2dContext> renderStack) {
     if (!isVisible()) {
       return;
@@ -1111,19 +1152,37 @@ public abstract class UI2dComponent extends UIObject {
     }
     if (this.childNeedsRedraw) {
       this.childNeedsRedraw = false;
+      final UI2dContext.Damage damage = ui.renderDamage;
       vg.translate(sx, sy);
+      if (damage != null) {
+        damage.offset(sx, sy);
+      }
       for (UIObject childObject : this.mutableChildren) {
         UI2dComponent child = (UI2dComponent) childObject;
         if (child.isVisible()) {
           if (child.needsRedraw || child.childNeedsRedraw || child.needsBlit) {
             float cx = child.x;
             float cy = child.y;
+            if ((damage != null) && !damage.intersects(cx, cy, child.width, child.height)) {
+              // Entirely outside the area being rendered, pixels are still good
+              child._clearRedraw();
+              continue;
+            }
             vg.translate(cx, cy);
+            if (damage != null) {
+              damage.offset(cx, cy);
+            }
             child.draw(ui, vg);
+            if (damage != null) {
+              damage.offset(-cx, -cy);
+            }
             vg.translate(-cx, -cy);
           }
         }
       }
+      if (damage != null) {
+        damage.offset(-sx, -sy);
+      }
       vg.translate(-sx, -sy);
     }
     if (needsBorder) {
@@ -18,15 +18,92 @@
 
 package heronarts.glx.ui;
 
+import static org.lwjgl.bgfx.BGFX.BGFX_STATE_BLEND_ALPHA;
+
 import heronarts.glx.View;
+import heronarts.glx.event.KeyEvent;
+import heronarts.glx.event.MouseEvent;
 import heronarts.glx.ui.vg.VGraphics;
 
 public class UI2dContext extends UI2dContainer implements UILayer {
 
+  /**
+   * Bounding box of the area of a context that needs to be rendered, in the
+   * context's own coordinate space. Only accessed on the UI thread.
+   */
+  static final class Damage {
+
+    private boolean full = true;
+    private boolean empty = true;
+    private float x0, y0, x1, y1;
+
+    // Origin of the component currently being drawn, while rendering
+    private float offsetX = 0, offsetY = 0;
+
+    void setFull() {
+      this.full = true;
+    }
+
+    void add(float x, float y, float width, float height) {
+      if (this.full || (width <= 0) || (height <= 0)) {
+        return;
+      }
+      if (this.empty) {
+        this.x0 = x;
+        this.y0 = y;
+        this.x1 = x + width;
+        this.y1 = y + height;
+        this.empty = false;
+      } else {
+        this.x0 = Math.min(this.x0, x);
+        this.y0 = Math.min(this.y0, y);
+        this.x1 = Math.max(this.x1, x + width);
+        this.y1 = Math.max(this.y1, y + height);
+      }
+    }
+
+    /**
+     * Whether the damage covers only part of a context of the given size. An
+     * empty damage area is conservatively treated as covering everything.
+     */
+    boolean isPartial(float width, float height) {
+      return !this.full && !this.empty &&
+        ((this.x0 > 0) || (this.y0 > 0) || (this.x1 < width) || (this.y1 < height));
+    }
+
+    void offset(float dx, float dy) {
+      this.offsetX += dx;
+      this.offsetY += dy;
+    }
+
+    /**
+     * Whether a rectangle relative to the current drawing origin touches the damage
+     */
+    boolean intersects(float x, float y, float width, float height) {
+      x += this.offsetX;
+      y += this.offsetY;
+      return (x < this.x1) && (x + width > this.x0) && (y < this.y1) && (y + height > this.y0);
+    }
+
+    void clear() {
+      this.full = false;
+      this.empty = true;
+      this.offsetX = this.offsetY = 0;
+    }
+  }
+
   private final VGraphics.Framebuffer framebuffer;
 
+  final Damage damage = new Damage();
+
   boolean isOffscreen = false;
 
+  // Render scheduling state, managed by the UI root on the UI thread
+  long lastInteractionMillis = 0;
+  int deferredFrames = 0;
+  int renderOrder = -1;
+  boolean renderScheduled = false;
+
   /**
    * Constructs a new UI2dContext
    *
@@ -64,16 +141,37 @@ public class UI2dContext extends UI2dContainer implements UILayer {
    * Renders the content of the context to its own framebuffer. Note that this
    * method assumes that all nested VGraphics instances beneath this one in the
    * tree have themselves already been rendered. This is because NanoVG is not
-   * re-entrant and we share one instance.
+   * re-entrant and we share one instance. Only the damaged area is rendered,
+   * the rest of the framebuffer keeps its contents from previous renders.
    *
    * @param vg VGraphics instance
    */
   protected final void render(VGraphics vg) {
-    // Bind the framebuffer, which rebuilds if necessary
+    // A rebuilt framebuffer has lost all of its contents
+    if (this.framebuffer.isStale()) {
+      this.damage.setFull();
+    }
+    final Damage damage = this.damage;
+    final boolean partial = damage.isPartial(this.width, this.height);
+
+    // Bind the framebuffer, which rebuilds if necessary. Partial renders are
+    // clipped to the damage by the renderer and by NanoVG
     vg.bindFramebuffer(this.framebuffer);
+    if (partial) {
+      this.framebuffer.scissor(damage.x0, damage.y0, damage.x1 - damage.x0, damage.y1 - damage.y0);
+    }
     vg.beginFrame(this.width, this.height);
-    super.draw(this.ui, vg);
+    if (partial) {
+      vg.scissor(damage.x0, damage.y0, damage.x1 - damage.x0, damage.y1 - damage.y0);
+      this.ui.renderDamage = damage;
+    }
+    try {
+      super.draw(this.ui, vg);
+    } finally {
+      this.ui.renderDamage = null;
+    }
     vg.endFrame();
+    damage.clear();
 
     // Note: this super.draw() call will have cleared the
     // needsRedraw and childNeedsRedraw flags on this element
@@ -93,20 +191,36 @@ public class UI2dContext extends UI2dContainer implements UILayer {
    */
   @Override
   public final void draw(UI ui, View view) {
+    draw(ui, view, BGFX_STATE_BLEND_ALPHA);
+  }
+
+  /**
+   * Draws the context into a parent view with the given blending
+   *
+   * @param ui UI context
+   * @param view Parent view to draw into
+   * @param blend Blend state
+   */
+  final void draw(UI ui, View view, long blend) {
     if (this.isOffscreen || !isVisible()) {
       return;
     }
 
     // Ensure that our buffer exists.
-    // NOTE: this shouldn't be necessary, but catches an edge case where
-    // there are so many buffers that need redrawing that this buffer
-    // didn't get serviced
+    // NOTE: this shouldn't be necessary, but catches the case where there
+    // are so many buffers that need redrawing that the render of this one
+    // was deferred to a later frame. That render will need to cover the
+    // whole of a freshly initialized framebuffer.
+    if (this.framebuffer.isStale()) {
+      this.damage.setFull();
+    }
     this.framebuffer.initialize();
 
     // NOTE: no rendering happens inside this method. The previous render() pass
     // will have ensured that our texture was rendered properly if it
     // needed to be.
-    view.image(this);
+    view.image(this, blend);
+    this.needsBlit = false;
   }
 
   /**
@@ -136,6 +250,34 @@ public class UI2dContext extends UI2dContainer implements UILayer {
     this.needsBlit = false;
   }
 
+  private void interacted() {
+    this.lastInteractionMillis = System.currentTimeMillis();
+  }
+
+  @Override
+  void mousePressed(MouseEvent mouseEvent, float mx, float my) {
+    interacted();
+    super.mousePressed(mouseEvent, mx, my);
+  }
+
+  @Override
+  void mouseDragged(MouseEvent mouseEvent, float mx, float my, float dx, float dy) {
+    interacted();
+    super.mouseDragged(mouseEvent, mx, my, dx, dy);
+  }
+
+  @Override
+  void mouseScroll(MouseEvent mouseEvent, float mx, float my, float dx, float dy) {
+    interacted();
+    super.mouseScroll(mouseEvent, mx, my, dx, dy);
+  }
+
+  @Override
+  void keyPressed(KeyEvent keyEvent, char keyChar, int keyCode) {
+    interacted();
+    super.keyPressed(keyEvent, keyChar, keyCode);
+  }
+
   @Override
   protected void onResize() {
     this.framebuffer.markForResize(this.width, this.height);
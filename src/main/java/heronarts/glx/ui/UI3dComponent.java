@@ -19,6 +19,7 @@
 package heronarts.glx.ui;
 
 import heronarts.glx.View;
+import heronarts.glx.shader.ShaderProgram;
 
 /**
  * A component in a UI3dContext. Draws itself and may draw children.
@@ -50,6 +51,20 @@ public abstract class UI3dComponent extends UIObject {
     return this.context;
   }
 
+  /**
+   * Marks the context this component belongs to as needing to be drawn
+   * again, for when the component's appearance has changed
+   *
+   * @return this
+   */
+  public UI3dComponent redraw() {
+    UI3dContext context = this.context;
+    if (context != null) {
+      context.redraw();
+    }
+    return this;
+  }
+
   /**
    * Adds a child to this component
    *
@@ -58,6 +73,7 @@ public abstract class UI3dComponent extends UIObject {
    */
   public final UI3dComponent addChild(UI3dComponent child) {
     this.mutableChildren.add(child);
+    redraw();
     return this;
   }
 
@@ -69,6 +85,7 @@ public abstract class UI3dComponent extends UIObject {
    */
   public final UI3dComponent removeChild(UI3dComponent child) {
     this.mutableChildren.remove(child);
+    redraw();
     return this;
   }
 
@@ -78,16 +95,68 @@ public abstract class UI3dComponent extends UIObject {
    * @param view View to draw into
    */
   public final void draw(UI ui, View view) {
+    draw(ui, view, ShaderProgram.NO_ENCODER);
+  }
+
+  /**
+   * Draw the given component into the View context through an explicit encoder
+   *
+   * @param ui UI context
+   * @param view View to draw into
+   * @param encoder bgfx encoder, or ShaderProgram.NO_ENCODER on the UI thread
+   */
+  final void draw(UI ui, View view, long encoder) {
     if (!isVisible()) {
       return;
     }
-    onDraw(ui, view);
+    onDraw(ui, view, encoder);
+    for (UIObject child : this.children) {
+      ((UI3dComponent) child).draw(ui, view, encoder);
+    }
+  }
+
+  /**
+   * Whether this component may be drawn on a worker thread when its context draws
+   * in parallel. Components that return true must override onDraw(UI, View, long),
+   * submit only through the given encoder, and not modify any state shared with
+   * other components or the UI thread.
+   *
+   * @return true if this component supports parallel drawing
+   */
+  protected boolean isParallelDrawSafe() {
+    return false;
+  }
+
+  /**
+   * Whether this component and all of its children may be drawn in parallel
+   *
+   * @return true if the whole subtree supports parallel drawing
+   */
+  final boolean isParallelDrawSafeTree() {
+    if (!isParallelDrawSafe()) {
+      return false;
+    }
     for (UIObject child : this.children) {
-      ((UI3dComponent) child).draw(ui, view);
+      if (!((UI3dComponent) child).isParallelDrawSafeTree()) {
+        return false;
+      }
     }
+    return true;
   }
 
   protected void onDraw(UI ui, View view) {
     // subclasses may override
   }
+
+  /**
+   * Draws through an explicit encoder. By default this invokes onDraw(UI, View),
+   * which is only valid on the UI thread.
+   *
+   * @param ui UI context
+   * @param view View to draw into
+   * @param encoder bgfx encoder, or ShaderProgram.NO_ENCODER on the UI thread
+   */
+  protected void onDraw(UI ui, View view, long encoder) {
+    onDraw(ui, view);
+  }
 }
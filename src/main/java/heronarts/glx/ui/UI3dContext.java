@@ -21,7 +21,10 @@ package heronarts.glx.ui;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lwjgl.bgfx.BGFX;
 
@@ -30,6 +33,7 @@ import com.google.gson.JsonObject;
 import heronarts.glx.View;
 import heronarts.glx.event.KeyEvent;
 import heronarts.glx.event.MouseEvent;
+import heronarts.glx.shader.ShaderProgram;
 import heronarts.glx.ui.component.UIInputBox;
 import heronarts.lx.LX;
 import heronarts.lx.LXSerializable;
@@ -146,6 +150,15 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
     new BooleanParameter("ShowCenter", false)
     .setDescription("Shows the center point of the scene");
 
+  /**
+   * Whether to draw components in parallel, on worker threads with their own
+   * bgfx encoders. Only components which declare themselves parallel-safe are
+   * drawn off the UI thread.
+   */
+  public final BooleanParameter parallelDraw =
+    new BooleanParameter("ParallelDraw", false)
+    .setDescription("Draws parallel-safe components on worker threads");
+
   /**
    * Whether to animate between camera positions
    */
@@ -326,6 +339,12 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
   private final Vector3f eyeDamped = new Vector3f(0, 0, 0);
   private final Vector3f up = new Vector3f(0, 1, 0);
 
+  // Change tracking, so that an unchanged scene is not drawn again
+  private volatile boolean needsRedraw = true;
+  private long drawnFrameSequence = -1;
+  private final Matrix4f drawnViewMatrix = new Matrix4f();
+  private final Matrix4f drawnProjectionMatrix = new Matrix4f();
+
   // Radius bounds
   private float minRadius = 1, maxRadius = Float.MAX_VALUE;
 
@@ -410,6 +429,8 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
         }
       }
     });
+
+    this.showCenterPoint.addListener((p) -> redraw());
   }
 
   @Override
@@ -493,6 +514,7 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
     }
     component.setContext(this);
     this.mutableChildren.add(component);
+    redraw();
     return this;
   }
 
@@ -508,6 +530,7 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
     }
     this.mutableChildren.remove(component);
     component.setContext(null);
+    redraw();
     return this;
   }
 
@@ -723,17 +746,39 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
 
   }
 
-  public final void draw(UI ui, View view) {
-    if (view != this.view) {
-      throw new IllegalArgumentException("Not currently supported to draw a 3dContext into a different view");
-    }
+  /**
+   * Marks the scene as needing to be drawn on the next frame. Changes to the
+   * camera and new engine frames are detected automatically, this is only
+   * needed when a component's own appearance changes. May be called from
+   * any thread.
+   *
+   * @return this
+   */
+  public UI3dContext redraw() {
+    this.needsRedraw = true;
+    return this;
+  }
 
+  /**
+   * Whether anything in the scene changed since it was last drawn. Invoked
+   * on the UI thread after loop tasks have run.
+   *
+   * @return true if the scene needs to be drawn again
+   */
+  boolean needsDraw() {
     if (!isVisible()) {
-      this.view.bind();
-      BGFX.bgfx_touch(this.view.getId());
-      return;
+      return false;
+    }
+    if (this.needsRedraw || (this.drawnFrameSequence != this.ui.lx.getUIFrameSequence())) {
+      return true;
     }
+    updateView();
+    return
+      !this.drawnViewMatrix.equals(this.view.getViewMatrix()) ||
+      !this.drawnProjectionMatrix.equals(this.view.getProjectionMatrix());
+  }
 
+  private void updateView() {
     // Set the camera view matrix
     computeCamera(false);
     this.view.setCamera(this.eyeDamped, this.centerDamped, this.up);
@@ -756,14 +801,148 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
       this.view.setOrthographic(-halfRadiusWidth, halfRadiusWidth, -halfRadiusHeight, halfRadiusHeight, 0, radiusValue * 10);
       break;
     }
+  }
+
+  public final void draw(UI ui, View view) {
+    if (view != this.view) {
+      throw new IllegalArgumentException("Not currently supported to draw a 3dContext into a different view");
+    }
+
+    if (!isVisible()) {
+      this.view.bind();
+      BGFX.bgfx_touch(this.view.getId());
+      return;
+    }
+
+    // NOTE: clear this before drawing, a redraw() requested during the draw
+    // applies to the next frame
+    this.needsRedraw = false;
+    this.drawnFrameSequence = ui.lx.getUIFrameSequence();
+
+    updateView();
+    this.drawnViewMatrix.set(this.view.getViewMatrix());
+    this.drawnProjectionMatrix.set(this.view.getProjectionMatrix());
 
     // Bind the view, touch it to make sure it's cleared in case no children draw
     this.view.bind();
     BGFX.bgfx_touch(this.view.getId());
 
     // Draw all the components in the scene
+    if (this.parallelDraw.isOn()) {
+      drawParallel(ui);
+    } else {
+      for (UIObject child : this.mutableChildren) {
+        ((UI3dComponent) child).draw(ui, this.view);
+      }
+    }
+
+    // Submit whatever components queued, in sorted order
+    this.view.getRenderQueue().flush();
+
+    if (this.showCenterPoint.isOn()) {
+      drawCenterPoint(ui);
+    }
+  }
+
+  // Size of the center point marker, relative to the camera radius
+  private static final float CENTER_POINT_SCALE = .02f;
+
+  private void drawCenterPoint(UI ui) {
+    final float size = CENTER_POINT_SCALE * this.radiusDamped.getValuef();
+    final float x = this.centerDamped.x, y = this.centerDamped.y, z = this.centerDamped.z;
+    ui.lx.transientGeometry.begin(this.view)
+      .color(0xffff0000)
+      .line(x - size, y, z, x + size, y, z)
+      .color(0xff00ff00)
+      .line(x, y - size, z, x, y + size, z)
+      .color(0xff0000ff)
+      .line(x, y, z - size, x, y, z + size)
+      .end();
+  }
+
+  // Shared by all contexts, which are only ever drawn one at a time
+  private static ForkJoinPool drawPool = null;
+  private static int drawPoolEncoders = 0;
+
+  private static ForkJoinPool getDrawPool() {
+    if (drawPool == null) {
+      // NOTE: the UI thread holds the implicit encoder, so workers get one fewer
+      drawPoolEncoders = Math.max(1, BGFX.bgfx_get_caps().limits().maxEncoders() - 1);
+      drawPool = new ForkJoinPool(Math.max(1, Math.min(drawPoolEncoders, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+    return drawPool;
+  }
+
+  private final List<UI3dComponent> parallelChildren = new ArrayList<UI3dComponent>();
+  private final List<UI3dComponent> serialChildren = new ArrayList<UI3dComponent>();
+
+  /**
+   * Draws parallel-safe children on the draw pool, each group of children into
+   * an encoder of its own, while the remaining children are drawn serially on the
+   * UI thread. All encoders are ended before this returns, as bgfx requires
+   * before the frame is submitted. The view's camera and projection, and the
+   * frustum derived from them, are all set by updateView() beforehand and must
+   * not be modified by any child until every worker has finished.
+   */
+  private void drawParallel(UI ui) {
+    this.parallelChildren.clear();
+    this.serialChildren.clear();
     for (UIObject child : this.mutableChildren) {
-      ((UI3dComponent) child).draw(ui, this.view);
+      UI3dComponent component = (UI3dComponent) child;
+      if (component.isVisible() && component.isParallelDrawSafeTree()) {
+        this.parallelChildren.add(component);
+      } else {
+        this.serialChildren.add(component);
+      }
+    }
+
+    final ForkJoinPool pool = getDrawPool();
+    final int numGroups = Math.min(this.parallelChildren.size(), drawPoolEncoders);
+    final List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>(numGroups);
+    for (int g = 0; g < numGroups; ++g) {
+      final int group = g;
+      tasks.add(pool.submit(() -> {
+        final long encoder = BGFX.bgfx_encoder_begin(true);
+        if (encoder == ShaderProgram.NO_ENCODER) {
+          // Out of encoders, this group gets drawn on the UI thread instead
+          return false;
+        }
+        try {
+          for (int i = group; i < this.parallelChildren.size(); i += numGroups) {
+            this.parallelChildren.get(i).draw(ui, this.view, encoder);
+          }
+        } finally {
+          BGFX.bgfx_encoder_end(encoder);
+        }
+        return true;
+      }));
+    }
+
+    // Everything else draws here in the meantime
+    for (UI3dComponent child : this.serialChildren) {
+      child.draw(ui, this.view);
+    }
+
+    // Wait for every group before propagating any failure, no encoder may be
+    // left open when the frame is submitted
+    RuntimeException failure = null;
+    for (int g = 0; g < numGroups; ++g) {
+      try {
+        if (!tasks.get(g).join()) {
+          for (int i = g; i < this.parallelChildren.size(); i += numGroups) {
+            this.parallelChildren.get(i).draw(ui, this.view);
+          }
+        }
+      } catch (RuntimeException x) {
+        if (failure == null) {
+          failure = x;
+        }
+      }
+    }
+    this.parallelChildren.clear();
+    this.serialChildren.clear();
+    if (failure != null) {
+      throw failure;
     }
   }
 
@@ -926,6 +1105,7 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
   private static final String KEY_DEPTH = "depth";
   private static final String KEY_PHI_LOCK = "phiLock";
   private static final String KEY_CENTER_POINT = "centerPoint";
+  private static final String KEY_PARALLEL_DRAW = "parallelDraw";
 
 
   @Override
@@ -937,6 +1117,7 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
     object.addProperty(KEY_DEPTH, this.depth.getValue());
     object.addProperty(KEY_PHI_LOCK, this.phiLock.isOn());
     object.addProperty(KEY_CENTER_POINT, this.showCenterPoint.isOn());
+    object.addProperty(KEY_PARALLEL_DRAW, this.parallelDraw.isOn());
     object.add(KEY_CAMERA, LXSerializable.Utils.toObject(lx, this.camera));
     object.add(KEY_CUE, LXSerializable.Utils.toArray(lx, this.cue));
     object.addProperty(KEY_FOCUS, this.focusCamera.getValuei());
@@ -954,6 +1135,7 @@ public class UI3dContext extends UIObject implements LXSerializable, UILayer, UI
     LXSerializable.Utils.loadDouble(this.depth, object, KEY_DEPTH);
     LXSerializable.Utils.loadBoolean(this.phiLock, object, KEY_PHI_LOCK);
     LXSerializable.Utils.loadBoolean(this.showCenterPoint, object, KEY_CENTER_POINT);
+    LXSerializable.Utils.loadBoolean(this.parallelDraw, object, KEY_PARALLEL_DRAW);
     LXSerializable.Utils.loadObject(lx, this.camera, object, KEY_CAMERA);
     LXSerializable.Utils.loadArray(lx, this.cue, object, KEY_CUE);
     LXSerializable.Utils.loadInt(this.focusCamera, object, KEY_FOCUS);
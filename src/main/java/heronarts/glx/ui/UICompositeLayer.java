@@ -0,0 +1,142 @@
+/**
+ * Copyright 2022- Mark C. Slee, Heron Arts LLC
+ *
+ * This file is part of the LX Studio software library. By using
+ * LX, you agree to the terms of the LX Studio Software License
+ * and Distribution Agreement, available at: http://lx.studio/license
+ *
+ * Please note that the LX license is not open-source. The license
+ * allows for free, non-commercial use.
+ *
+ * HERON ARTS MAKES NO WARRANTY, EXPRESS, IMPLIED, STATUTORY, OR
+ * OTHERWISE, AND SPECIFICALLY DISCLAIMS ANY WARRANTY OF
+ * MERCHANTABILITY, NON-INFRINGEMENT, OR FITNESS FOR A PARTICULAR
+ * PURPOSE, WITH RESPECT TO THE SOFTWARE.
+ *
+ * @author Mark C. Slee <mark@heronarts.com>
+ */
+
+
+package heronarts.glx.ui;
+
+import static org.lwjgl.bgfx.BGFX.*;
+
+import java.util.List;
+
+import heronarts.glx.GLX;
+import heronarts.glx.ResourceTracker;
+import heronarts.glx.View;
+import heronarts.glx.shader.Tex2d;
+
+/**
+ * Persistent composite of the top-level UI2dContexts. The contexts are blitted
+ * into a window-sized framebuffer only when one of them has changed, every
+ * other frame the root view just draws this layer with a single blit.
+ */
+class UICompositeLayer {
+
+  private static final long TEXTURE_FLAGS =
+    BGFX_TEXTURE_RT |
+    BGFX_SAMPLER_U_CLAMP |
+    BGFX_SAMPLER_V_CLAMP |
+    BGFX_SAMPLER_POINT;
+
+  private final GLX glx;
+  private final View view;
+
+  private short framebuffer = BGFX_INVALID_HANDLE;
+  private short texture = BGFX_INVALID_HANDLE;
+  private ResourceTracker.Resource resource = null;
+
+  // NOTE: in framebuffer pixels, matching the root view
+  private int width = 0;
+  private int height = 0;
+
+  UICompositeLayer(GLX glx) {
+    this.glx = glx;
+    this.view = new View(glx);
+    this.view.setClearFlags(BGFX_CLEAR_COLOR | BGFX_CLEAR_DEPTH);
+    this.view.setClearColor(0x00000000);
+  }
+
+  /**
+   * Matches the size of the layer to the view it is drawn into, rebuilding
+   * the framebuffer if necessary
+   *
+   * @param target View the layer is drawn into
+   * @return true if the framebuffer was rebuilt and its contents are lost
+   */
+  boolean resize(View target) {
+    final int width = target.getWidth();
+    final int height = target.getHeight();
+    if ((width == this.width) && (height == this.height)) {
+      return false;
+    }
+    disposeFramebuffer();
+    this.width = width;
+    this.height = height;
+    if ((width > 0) && (height > 0)) {
+      this.framebuffer = bgfx_create_frame_buffer(width, height, BGFX_TEXTURE_FORMAT_RGBA8, TEXTURE_FLAGS);
+      if (this.framebuffer == BGFX_INVALID_HANDLE) {
+        throw new RuntimeException("bgfx_create_frame_buffer failed for UI composite layer " + width + "x" + height);
+      }
+      this.texture = bgfx_get_texture(this.framebuffer, 0);
+      this.resource = this.glx.resourceTracker.register(ResourceTracker.Category.FRAMEBUFFER, "UICompositeLayer " + width + "x" + height, 4L * width * height);
+    }
+    this.view.setRect(0, 0, width, height);
+    this.view.setScreenOrtho();
+    return true;
+  }
+
+  /**
+   * Whether the layer has a framebuffer, which it won't while the window
+   * has no area
+   *
+   * @return true if the layer can be composited and drawn
+   */
+  boolean isValid() {
+    return this.framebuffer != BGFX_INVALID_HANDLE;
+  }
+
+  /**
+   * Clears the layer and blits all of the contexts into it, in order
+   *
+   * @param ui UI
+   * @param viewId View id to composite in
+   * @param contexts Top-level contexts
+   */
+  void composite(UI ui, short viewId, List<UI2dContext> contexts) {
+    this.view.bind(viewId);
+    bgfx_set_view_frame_buffer(viewId, this.framebuffer);
+    this.view.touch();
+    for (UI2dContext context : contexts) {
+      context.draw(ui, this.view, Tex2d.BLEND_COMPOSITE);
+    }
+  }
+
+  /**
+   * Draws the composited layer over the full target view
+   *
+   * @param target View to draw into
+   */
+  void draw(View target) {
+    this.glx.program.tex2d.submit(target, this.texture, 0, 0, this.width, this.height, Tex2d.BLEND_PREMULTIPLIED);
+  }
+
+  private void disposeFramebuffer() {
+    if (this.framebuffer != BGFX_INVALID_HANDLE) {
+      bgfx_destroy_frame_buffer(this.framebuffer);
+      this.framebuffer = BGFX_INVALID_HANDLE;
+      this.texture = BGFX_INVALID_HANDLE;
+    }
+    if (this.resource != null) {
+      this.resource.dispose();
+      this.resource = null;
+    }
+  }
+
+  void dispose() {
+    disposeFramebuffer();
+    this.view.dispose();
+  }
+}
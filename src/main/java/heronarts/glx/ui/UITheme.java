@@ -19,6 +19,8 @@
 package heronarts.glx.ui;
 
 import java.io.IOException;
+import java.util.EnumMap;
+
 import heronarts.glx.ui.vg.VGraphics;
 import heronarts.lx.LX;
 
@@ -103,41 +105,108 @@ public class UITheme {
   public final VGraphics.Image iconPlay;
   public final VGraphics.Image iconView;
 
+  // Every font and icon is listed once here, they are all requested before any
+  // is loaded, and each is then loaded exactly once
+  private enum Font {
+    SEMIBOLD("Inter-SemiBold", "Inter-SemiBold.otf"),
+    BLACK("Inter-Black", "Inter-Black.otf");
+
+    private final String fontName;
+    private final String path;
+
+    private Font(String fontName, String path) {
+      this.fontName = fontName;
+      this.path = path;
+    }
+  }
+
+  private enum Icon {
+    NOTE("icon-note@2x.png"),
+    TEMPO("icon-tempo@2x.png"),
+    CONTROL("icon-control@2x.png"),
+    TRIGGER("icon-trigger@2x.png"),
+    TRIGGER_SOURCE("icon-trigger-source@2x.png"),
+    LOOP("icon-loop@2x.png"),
+    MAP("icon-map@2x.png"),
+    ARM("icon-arm@2x.png"),
+    LFO("icon-lfo@2x.png"),
+    LOAD("icon-load@2x.png"),
+    SAVE("icon-save@2x.png"),
+    SAVE_AS("icon-save-as@2x.png"),
+    NEW("icon-new@2x.png"),
+    OPEN("icon-open@2x.png"),
+    KEYBOARD("icon-keyboard@2x.png"),
+    PREFERENCES("icon-preferences@2x.png"),
+    UNDO("icon-undo@2x.png"),
+    REDO("icon-redo@2x.png"),
+    TEMPO_DOWN("icon-tempo-down@2x.png"),
+    TEMPO_UP("icon-tempo-up@2x.png"),
+    OSC_INPUT("icon-osc-input@2x.png"),
+    OSC_OUTPUT("icon-osc-output@2x.png"),
+    PATTERN_TRANSITION("icon-pattern-transition@2x.png"),
+    PATTERN_ROTATE("icon-pattern-rotate@2x.png"),
+    PLAY("icon-play@2x.png"),
+    VIEW("icon-view@2x.png");
+
+    private final String path;
+
+    private Icon(String path) {
+      this.path = path;
+    }
+  }
+
   UITheme(VGraphics vg) throws IOException {
-    this.controlFont = vg.loadFont("Inter-SemiBold", "Inter-SemiBold.otf");
+    // Get every asset loading at once, each load below only waits on its own
+    for (Font font : Font.values()) {
+      vg.prefetchFonts(font.path);
+    }
+    for (Icon icon : Icon.values()) {
+      vg.prefetchIcons(icon.path);
+    }
+
+    final EnumMap<Font, VGraphics.Font> fonts = new EnumMap<Font, VGraphics.Font>(Font.class);
+    for (Font font : Font.values()) {
+      fonts.put(font, vg.loadFont(font.fontName, font.path));
+    }
+
+    this.controlFont = fonts.get(Font.SEMIBOLD);
     this.controlFont.fontSize(10);
     LX.initProfiler.log("GLX: UI: Theme: controlFont");
 
-    this.labelFont = this.deviceFont = this.windowTitleFont = vg.loadFont("Inter-Black", "Inter-Black.otf");
+    this.labelFont = this.deviceFont = this.windowTitleFont = fonts.get(Font.BLACK);
     this.labelFont.fontSize(10);
     LX.initProfiler.log("GLX: UI: Theme: labelFont");
 
-    this.iconNote = vg.loadIcon("icon-note@2x.png");
-    this.iconTempo = vg.loadIcon("icon-tempo@2x.png");
-    this.iconControl = vg.loadIcon("icon-control@2x.png");
-    this.iconTrigger = vg.loadIcon("icon-trigger@2x.png");
-    this.iconTriggerSource = vg.loadIcon("icon-trigger-source@2x.png");
-    this.iconLoop = vg.loadIcon("icon-loop@2x.png");
-    this.iconMap = vg.loadIcon("icon-map@2x.png");
-    this.iconArm = vg.loadIcon("icon-arm@2x.png");
-    this.iconLfo = vg.loadIcon("icon-lfo@2x.png");
-    this.iconLoad = vg.loadIcon("icon-load@2x.png");
-    this.iconSave = vg.loadIcon("icon-save@2x.png");
-    this.iconSaveAs = vg.loadIcon("icon-save-as@2x.png");
-    this.iconNew = vg.loadIcon("icon-new@2x.png");
-    this.iconOpen = vg.loadIcon("icon-open@2x.png");
-    this.iconKeyboard = vg.loadIcon("icon-keyboard@2x.png");
-    this.iconPreferences = vg.loadIcon("icon-preferences@2x.png");
-    this.iconUndo = vg.loadIcon("icon-undo@2x.png");
-    this.iconRedo = vg.loadIcon("icon-redo@2x.png");
-    this.iconTempoDown = vg.loadIcon("icon-tempo-down@2x.png");
-    this.iconTempoUp = vg.loadIcon("icon-tempo-up@2x.png");
-    this.iconOscInput = vg.loadIcon("icon-osc-input@2x.png");
-    this.iconOscOutput = vg.loadIcon("icon-osc-output@2x.png");
-    this.iconPatternTransition = vg.loadIcon("icon-pattern-transition@2x.png");
-    this.iconPatternRotate = vg.loadIcon("icon-pattern-rotate@2x.png");
-    this.iconPlay = vg.loadIcon("icon-play@2x.png");
-    this.iconView = vg.loadIcon("icon-view@2x.png");
+    final EnumMap<Icon, VGraphics.Image> icons = new EnumMap<Icon, VGraphics.Image>(Icon.class);
+    for (Icon icon : Icon.values()) {
+      icons.put(icon, vg.loadIcon(icon.path));
+    }
+    this.iconNote = icons.get(Icon.NOTE);
+    this.iconTempo = icons.get(Icon.TEMPO);
+    this.iconControl = icons.get(Icon.CONTROL);
+    this.iconTrigger = icons.get(Icon.TRIGGER);
+    this.iconTriggerSource = icons.get(Icon.TRIGGER_SOURCE);
+    this.iconLoop = icons.get(Icon.LOOP);
+    this.iconMap = icons.get(Icon.MAP);
+    this.iconArm = icons.get(Icon.ARM);
+    this.iconLfo = icons.get(Icon.LFO);
+    this.iconLoad = icons.get(Icon.LOAD);
+    this.iconSave = icons.get(Icon.SAVE);
+    this.iconSaveAs = icons.get(Icon.SAVE_AS);
+    this.iconNew = icons.get(Icon.NEW);
+    this.iconOpen = icons.get(Icon.OPEN);
+    this.iconKeyboard = icons.get(Icon.KEYBOARD);
+    this.iconPreferences = icons.get(Icon.PREFERENCES);
+    this.iconUndo = icons.get(Icon.UNDO);
+    this.iconRedo = icons.get(Icon.REDO);
+    this.iconTempoDown = icons.get(Icon.TEMPO_DOWN);
+    this.iconTempoUp = icons.get(Icon.TEMPO_UP);
+    this.iconOscInput = icons.get(Icon.OSC_INPUT);
+    this.iconOscOutput = icons.get(Icon.OSC_OUTPUT);
+    this.iconPatternTransition = icons.get(Icon.PATTERN_TRANSITION);
+    this.iconPatternRotate = icons.get(Icon.PATTERN_ROTATE);
+    this.iconPlay = icons.get(Icon.PLAY);
+    this.iconView = icons.get(Icon.VIEW);
     LX.initProfiler.log("GLX: UI: Theme: Icons");
   }
 
@@ -22,12 +22,27 @@ import static org.lwjgl.bgfx.BGFX.*;
 
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 import org.lwjgl.system.MemoryUtil;
 
 import com.google.gson.JsonObject;
 
+import heronarts.glx.DynamicTexture;
 import heronarts.glx.DynamicVertexBuffer;
 import heronarts.glx.GLX;
+import heronarts.glx.IndexBuffer;
+import heronarts.glx.RenderQueue;
 import heronarts.glx.Texture;
 import heronarts.glx.VertexBuffer;
 import heronarts.glx.VertexDeclaration;
@@ -40,20 +55,81 @@ import heronarts.lx.LXEngine;
 import heronarts.lx.LXSerializable;
 import heronarts.lx.model.LXModel;
 import heronarts.lx.model.LXPoint;
+import heronarts.lx.parameter.BooleanParameter;
 import heronarts.lx.parameter.BoundedParameter;
 
 public class UIPointCloud extends UI3dComponent implements LXSerializable {
 
-  private class Program extends ShaderProgram {
+  /**
+   * Strategy used to get point geometry and colors onto the GPU
+   */
+  public enum Mode {
+    /**
+     * Every point is expanded into an indexed quad of 4 vertices, each with
+     * its own copy of the point color.
+     */
+    VERTEX("vs_led"),
+
+    /**
+     * A single shared quad is instanced once per point, with point positions
+     * and colors supplied as per-instance data.
+     */
+    INSTANCED("vs_led_instanced"),
+
+    /**
+     * A single shared quad is instanced once per point, with static per-instance
+     * positions. Colors are uploaded into a texture with one texel per point,
+     * which the vertex shader samples by point index.
+     */
+    TEXTURE("vs_led_texture");
+
+    private final String vertexShader;
+
+    private Mode(String vertexShader) {
+      this.vertexShader = vertexShader;
+    }
+  }
+
+  private class Program extends ShaderProgram implements RenderQueue.RangeSubmit {
+    private final Mode mode;
     private short uniformTexture;
     private short uniformDimensions;
     private final FloatBuffer dimensionsBuffer;
 
-    Program(GLX lx) {
-      super(lx, "vs_led", "fs_led");
+    private short uniformColors = BGFX_INVALID_HANDLE;
+    private short uniformColorDimensions = BGFX_INVALID_HANDLE;
+    private FloatBuffer colorDimensionsBuffer = null;
+
+    // Range of points to draw on the next submit
+    private int drawStart = 0;
+    private int drawCount = 0;
+
+    // Overrides the instance data to draw in INSTANCED mode
+    private DynamicVertexBuffer drawInstances = null;
+
+    @Override
+    public void submit(View view, long bgfxState, int start, int count, Object instances) {
+      this.drawInstances = (DynamicVertexBuffer) instances;
+      this.drawStart = start;
+      this.drawCount = count;
+      submit(view, bgfxState);
+      this.drawInstances = null;
+    }
+
+    Program(GLX lx, Mode mode) {
+      super(lx, mode.vertexShader, "fs_led");
+      this.mode = mode;
+      if (mode != Mode.VERTEX) {
+        this.bgfxState |= BGFX_STATE_PT_TRISTRIP;
+      }
       this.uniformTexture = bgfx_create_uniform("s_texColor", BGFX_UNIFORM_TYPE_SAMPLER, 1);
       this.uniformDimensions = bgfx_create_uniform("u_dimensions", BGFX_UNIFORM_TYPE_VEC4, 1);
       this.dimensionsBuffer = MemoryUtil.memAllocFloat(4);
+      if (mode == Mode.TEXTURE) {
+        this.uniformColors = bgfx_create_uniform("s_colors", BGFX_UNIFORM_TYPE_SAMPLER, 1);
+        this.uniformColorDimensions = bgfx_create_uniform("u_colorDimensions", BGFX_UNIFORM_TYPE_VEC4, 1);
+        this.colorDimensionsBuffer = MemoryUtil.memAllocFloat(4);
+      }
     }
 
     @Override
@@ -61,79 +137,937 @@ public class UIPointCloud extends UI3dComponent implements LXSerializable {
       bgfx_destroy_uniform(this.uniformTexture);
       bgfx_destroy_uniform(this.uniformDimensions);
       MemoryUtil.memFree(this.dimensionsBuffer);
+      if (this.mode == Mode.TEXTURE) {
+        bgfx_destroy_uniform(this.uniformColors);
+        bgfx_destroy_uniform(this.uniformColorDimensions);
+        MemoryUtil.memFree(this.colorDimensionsBuffer);
+      }
       super.dispose();
     }
 
     @Override
     public void setVertexBuffers(View view) {
-      bgfx_set_vertex_buffer(0, modelBuffer.getHandle(), 0, modelBuffer.getNumVertices());
-      bgfx_set_dynamic_vertex_buffer(1, colorBuffer.getHandle(), 0, colorBuffer.getNumVertices());
+      switch (this.mode) {
+      case TEXTURE:
+        setVertexBuffer(0, quadBuffer.getHandle(), 0, quadBuffer.getNumVertices());
+        setInstanceData(positionBuffer.getHandle(), this.drawStart, this.drawCount);
+        break;
+      case INSTANCED:
+        setVertexBuffer(0, quadBuffer.getHandle(), 0, quadBuffer.getNumVertices());
+        final DynamicVertexBuffer instances = (this.drawInstances != null) ? this.drawInstances : instanceBuffer;
+        setInstanceData(instances.getHandle(), this.drawStart, this.drawCount);
+        break;
+      default:
+      case VERTEX:
+        setDynamicVertexBuffer(0, modelBuffer.getHandle(), 0, modelBuffer.getNumVertices());
+        setDynamicVertexBuffer(1, colorBuffer.getHandle(), 0, colorBuffer.getNumVertices());
+        setIndexBuffer(modelIndexBuffer.getHandle(), this.drawStart * MODEL_INDICES_PER_POINT, this.drawCount * MODEL_INDICES_PER_POINT);
+        break;
+      }
     }
 
     @Override
     public void setUniforms(View view) {
-      bgfx_set_texture(0, this.uniformTexture, texture.getHandle(), BGFX_SAMPLER_NONE);
+      setTexture(0, this.uniformTexture, texture.getHandle(), BGFX_SAMPLER_NONE);
       this.dimensionsBuffer.put(0, view.getWidth());
       this.dimensionsBuffer.put(1, view.getHeight());
       this.dimensionsBuffer.put(2, view.getAspectRatio());
-      switch (getContext().projection.getEnum()) {
-      case PERSPECTIVE:
-        this.dimensionsBuffer.put(3, 2.0f / view.getAspectRatio() * pointSize.getValuef());
-        break;
-      case ORTHOGRAPHIC:
-        this.dimensionsBuffer.put(3, 2.0f * pointSize.getValuef() / view.getWidth());
-        break;
+      this.dimensionsBuffer.put(3, getPointScale(view));
+      setUniform(this.uniformDimensions, this.dimensionsBuffer, 1);
+
+      if (this.mode == Mode.VERTEX) {
+        // Maps the quantized positions back into world space
+        setTransform(modelTransform);
+      }
+
+      if (this.mode == Mode.TEXTURE) {
+        setTexture(1, this.uniformColors, colorTexture.getHandle(), 0xffffffff);
+        this.colorDimensionsBuffer.put(0, colorTexture.getWidth());
+        this.colorDimensionsBuffer.put(1, colorTexture.getHeight());
+        this.colorDimensionsBuffer.put(2, 1f / colorTexture.getWidth());
+        this.colorDimensionsBuffer.put(3, 1f / colorTexture.getHeight());
+        setUniform(this.uniformColorDimensions, this.colorDimensionsBuffer, 1);
+      }
+    }
+  }
+
+  // VERTEX mode geometry, each point expanded to a quad of 4 vertices of quantized
+  // position and texcoord, 12 bytes per vertex rather than 20 as floats
+  private static final int MODEL_VERTICES_PER_POINT = 4;
+  private static final int MODEL_INDICES_PER_POINT = 6;
+  private static final int MODEL_ATTRIBUTES = VertexDeclaration.ATTRIB_POSITION_INT16 | VertexDeclaration.ATTRIB_TEXCOORD0_UINT8;
+  private static final int MODEL_BYTES_PER_VERTEX = 4 * Short.BYTES + 4;
+  private static final int MODEL_BYTES_PER_POINT = MODEL_VERTICES_PER_POINT * MODEL_BYTES_PER_VERTEX;
+
+  private static final byte[] MODEL_TEXCOORDS = {
+    0, 0,
+    (byte) 0xff, 0,
+    0, (byte) 0xff,
+    (byte) 0xff, (byte) 0xff
+  };
+
+  // Two triangles per quad
+  private static final int[] MODEL_INDICES = { 0, 1, 2, 2, 1, 3 };
+
+  /**
+   * Indices of the quad triangles for every point in VERTEX mode
+   */
+  private class ModelIndexBuffer extends IndexBuffer {
+
+    private ModelIndexBuffer(GLX lx, int numPoints) {
+      super(lx, numPoints * MODEL_INDICES_PER_POINT, needsIndex32(numPoints * MODEL_VERTICES_PER_POINT));
+    }
+
+    @Override
+    protected void bufferData(ByteBuffer buffer) {
+      final int numPoints = buffer.remaining() / (MODEL_INDICES_PER_POINT * (isIndex32() ? Integer.BYTES : Short.BYTES));
+      for (int i = 0; i < numPoints; ++i) {
+        final int base = i * MODEL_VERTICES_PER_POINT;
+        for (int index : MODEL_INDICES) {
+          if (isIndex32()) {
+            buffer.putInt(base + index);
+          } else {
+            buffer.putShort((short) (base + index));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps positions within the model bounds onto normalized 16-bit integers for
+   * VERTEX mode geometry. The vertex shader reads these in [-1, 1], and the
+   * model transform maps them back into world space.
+   */
+  private static class Quantization {
+
+    private static final int RANGE = Short.MAX_VALUE;
+
+    private final float centerX, centerY, centerZ;
+    private final float scaleX, scaleY, scaleZ;
+
+    private Quantization(LXModel model) {
+      float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+      float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+      for (LXPoint p : model.points) {
+        minX = Math.min(minX, p.x);
+        minY = Math.min(minY, p.y);
+        minZ = Math.min(minZ, p.z);
+        maxX = Math.max(maxX, p.x);
+        maxY = Math.max(maxY, p.y);
+        maxZ = Math.max(maxZ, p.z);
+      }
+      this.centerX = .5f * (minX + maxX);
+      this.centerY = .5f * (minY + maxY);
+      this.centerZ = .5f * (minZ + maxZ);
+      this.scaleX = getScale(minX, maxX);
+      this.scaleY = getScale(minY, maxY);
+      this.scaleZ = getScale(minZ, maxZ);
+    }
+
+    private static float getScale(float min, float max) {
+      // Flat dimensions quantize to 0 with any scale
+      final float halfExtent = .5f * (max - min);
+      return (halfExtent > 0) ? halfExtent : 1f;
+    }
+
+    private int quantize(float value, float center, float scale) {
+      return Math.round((value - center) / scale * RANGE);
+    }
+
+    private int quantizeX(float x) {
+      return quantize(x, this.centerX, this.scaleX);
+    }
+
+    private int quantizeY(float y) {
+      return quantize(y, this.centerY, this.scaleY);
+    }
+
+    private int quantizeZ(float z) {
+      return quantize(z, this.centerZ, this.scaleZ);
+    }
+
+    private static boolean inRange(int quantized) {
+      return (quantized >= -RANGE) && (quantized <= RANGE);
+    }
+
+    private void getTransform(FloatBuffer transform) {
+      new Matrix4f()
+        .translation(this.centerX, this.centerY, this.centerZ)
+        .scale(this.scaleX, this.scaleY, this.scaleZ)
+        .get(transform);
+    }
+  }
+
+  private static void packModelBuffer(LXModel model, ByteBuffer buffer, int start, int end, Quantization quantization) {
+    int offset = start * MODEL_BYTES_PER_POINT;
+    for (int i = start; i < end; ++i) {
+      final LXPoint p = model.points[i];
+      final short x = (short) quantization.quantizeX(p.x);
+      final short y = (short) quantization.quantizeY(p.y);
+      final short z = (short) quantization.quantizeZ(p.z);
+      for (int v = 0; v < MODEL_VERTICES_PER_POINT; ++v) {
+        buffer.putShort(offset, x);
+        buffer.putShort(offset + Short.BYTES, y);
+        buffer.putShort(offset + 2 * Short.BYTES, z);
+        buffer.putShort(offset + 3 * Short.BYTES, (short) 0);
+        buffer.put(offset + 4 * Short.BYTES, MODEL_TEXCOORDS[2*v]);
+        buffer.put(offset + 4 * Short.BYTES + 1, MODEL_TEXCOORDS[2*v+1]);
+        buffer.putShort(offset + 4 * Short.BYTES + 2, (short) 0);
+        offset += MODEL_BYTES_PER_VERTEX;
       }
-      bgfx_set_uniform(this.uniformDimensions, this.dimensionsBuffer, 1);
     }
   }
 
-  private class ModelBuffer extends VertexBuffer {
+  /**
+   * Unit quad shared by every instance in INSTANCED and TEXTURE modes, drawn as a triangle strip
+   */
+  private class QuadBuffer extends VertexBuffer {
 
-    private static final int VERTICES_PER_POINT = 6;
+    private static final int NUM_VERTICES = 4;
 
-    private ModelBuffer(GLX lx) {
-      super(lx, model.size * VERTICES_PER_POINT, VertexDeclaration.ATTRIB_POSITION | VertexDeclaration.ATTRIB_TEXCOORD0);
+    private QuadBuffer(GLX lx) {
+      super(lx, NUM_VERTICES, VertexDeclaration.ATTRIB_TEXCOORD0);
     }
 
     @Override
     protected void bufferData(ByteBuffer buffer) {
+      buffer.putFloat(0f);
+      buffer.putFloat(0f);
+
+      buffer.putFloat(1f);
+      buffer.putFloat(0f);
+
+      buffer.putFloat(0f);
+      buffer.putFloat(1f);
+
+      buffer.putFloat(1f);
+      buffer.putFloat(1f);
+    }
+  }
+
+  // TEXTURE mode geometry, per-instance point center followed by the point index
+  // which is used to look up its color texel
+  private static final int POSITION_ATTRIBUTES = VertexDeclaration.ATTRIB_INSTANCE0;
+  private static final int POSITION_BYTES_PER_POINT = 4 * Float.BYTES;
+
+  private static void packPositionBuffer(LXModel model, ByteBuffer buffer, int start, int end) {
+    int offset = start * POSITION_BYTES_PER_POINT;
+    for (int i = start; i < end; ++i) {
+      final LXPoint p = model.points[i];
+      buffer.putFloat(offset, p.x);
+      buffer.putFloat(offset + Float.BYTES, p.y);
+      buffer.putFloat(offset + 2 * Float.BYTES, p.z);
+      buffer.putFloat(offset + 3 * Float.BYTES, i);
+      offset += POSITION_BYTES_PER_POINT;
+    }
+  }
+
+  // INSTANCED mode geometry is interleaved with colors, two vec4s per point
+  private static final int INSTANCE_ATTRIBUTES = VertexDeclaration.ATTRIB_INSTANCE0 | VertexDeclaration.ATTRIB_INSTANCE1;
+  private static final int INSTANCE_STRIDE = 8 * Float.BYTES;
+  private static final int INSTANCE_COLOR_OFFSET = 4 * Float.BYTES;
+
+  private static void packInstancePositions(LXModel model, ByteBuffer buffer, int start, int end) {
+    int offset = start * INSTANCE_STRIDE;
+    for (int i = start; i < end; ++i) {
+      final LXPoint p = model.points[i];
+      buffer.putFloat(offset, p.x);
+      buffer.putFloat(offset + Float.BYTES, p.y);
+      buffer.putFloat(offset + 2 * Float.BYTES, p.z);
+      buffer.putFloat(offset + 3 * Float.BYTES, 1f);
+      offset += INSTANCE_STRIDE;
+    }
+  }
+
+  private static void packGeometry(Mode mode, LXModel model, ByteBuffer buffer, int start, int end, Quantization quantization) {
+    switch (mode) {
+    case TEXTURE:
+      packPositionBuffer(model, buffer, start, end);
+      break;
+    case INSTANCED:
+      packInstancePositions(model, buffer, start, end);
+      break;
+    default:
+    case VERTEX:
+      packModelBuffer(model, buffer, start, end, quantization);
+      break;
+    }
+  }
+
+  private static int getGeometryBytesPerPoint(Mode mode) {
+    switch (mode) {
+    case TEXTURE:
+      return POSITION_BYTES_PER_POINT;
+    case INSTANCED:
+      return INSTANCE_STRIDE;
+    default:
+    case VERTEX:
+      return MODEL_BYTES_PER_POINT;
+    }
+  }
+
+  private static int getGeometryVerticesPerPoint(Mode mode) {
+    return (mode == Mode.VERTEX) ? MODEL_VERTICES_PER_POINT : 1;
+  }
+
+  private static final ExecutorService GEOMETRY_EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+    Thread thread = new Thread(runnable, "UIPointCloud Geometry");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Static geometry for a model, packed into off-heap memory on a background
+   * thread. The UI thread polls for the result and turns it into a GPU buffer.
+   */
+  private static class PendingGeometry implements Runnable {
+
+    private static final ByteBuffer TAKEN = ByteBuffer.allocate(0);
+
+    private final Mode mode;
+    private final LXModel model;
+    private final int numPoints;
+
+    private final AtomicReference<ByteBuffer> data = new AtomicReference<ByteBuffer>(null);
+    private volatile boolean failed = false;
+
+    // Written before the data is published, so visible to whoever takes it
+    private Quantization quantization = null;
+
+    private PendingGeometry(Mode mode, LXModel model) {
+      this.mode = mode;
+      this.model = model;
+      this.numPoints = model.size;
+    }
+
+    @Override
+    public void run() {
+      if (this.data.get() == TAKEN) {
+        // Cancelled before we even started
+        return;
+      }
+      ByteBuffer buffer = null;
+      try {
+        buffer = MemoryUtil.memAlloc(this.numPoints * getGeometryBytesPerPoint(this.mode));
+        if (this.mode == Mode.VERTEX) {
+          this.quantization = new Quantization(this.model);
+        }
+        packGeometry(this.mode, this.model, buffer, 0, this.numPoints, this.quantization);
+      } catch (Exception x) {
+        GLX.error(x, "UIPointCloud failed to pack geometry in background");
+        MemoryUtil.memFree(buffer);
+        this.failed = true;
+        return;
+      }
+      if (!this.data.compareAndSet(null, buffer)) {
+        // Cancelled while we were working
+        MemoryUtil.memFree(buffer);
+      }
+    }
+
+    /**
+     * Takes ownership of the packed data, if it is ready
+     *
+     * @return Packed data, or null if not ready
+     */
+    private ByteBuffer take() {
+      ByteBuffer buffer = this.data.get();
+      if ((buffer == null) || (buffer == TAKEN)) {
+        return null;
+      }
+      this.data.set(TAKEN);
+      return buffer;
+    }
+
+    private void cancel() {
+      ByteBuffer buffer = this.data.getAndSet(TAKEN);
+      if ((buffer != null) && (buffer != TAKEN)) {
+        MemoryUtil.memFree(buffer);
+      }
+    }
+  }
+
+  /**
+   * Accumulates dirty ranges of point indices, merging nearby ranges and giving
+   * up in favor of a full update when there are too many or they cover too much.
+   */
+  private static class DirtySpans {
+
+    // Dirty points separated by fewer than this many clean ones share a span
+    private static final int MERGE_GAP = 32;
+
+    // Past this many spans, the per-update overhead outweighs a full update
+    private static final int MAX_SPANS = 64;
+
+    // Past this fraction of dirty points, just update everything
+    private static final float FULL_UPDATE_RATIO = .5f;
+
+    // Start (inclusive) and end (exclusive) point index pairs
+    private final int[] spans = new int[2 * MAX_SPANS];
+    private int numSpans = 0;
+    private int numDirty = 0;
+    private int spanStart = -1;
+    private int spanEnd = -1;
+    private boolean full = false;
+
+    private void begin() {
+      this.numSpans = 0;
+      this.numDirty = 0;
+      this.spanStart = -1;
+      this.spanEnd = -1;
+      this.full = false;
+    }
+
+    private void add(int index) {
+      if (this.spanStart < 0) {
+        this.spanStart = index;
+      } else if (index - this.spanEnd >= MERGE_GAP) {
+        commit();
+        this.spanStart = index;
+      }
+      this.spanEnd = index + 1;
+    }
+
+    private void commit() {
+      // Once past the limit we keep counting spans but stop recording them,
+      // a full update will happen anyways
+      if (this.numSpans < MAX_SPANS) {
+        this.spans[2 * this.numSpans] = this.spanStart;
+        this.spans[2 * this.numSpans + 1] = this.spanEnd;
+      }
+      ++this.numSpans;
+      this.numDirty += this.spanEnd - this.spanStart;
+    }
+
+    /**
+     * Finishes accumulating spans
+     *
+     * @param size Total number of points
+     * @return true if anything is dirty
+     */
+    private boolean end(int size) {
+      if (this.spanStart >= 0) {
+        commit();
+      }
+      if ((this.numSpans > MAX_SPANS) || (this.numDirty > size * FULL_UPDATE_RATIO)) {
+        this.full = true;
+      }
+      return this.numSpans > 0;
+    }
+
+    private boolean setFull() {
+      this.full = true;
+      return true;
+    }
+  }
+
+  /**
+   * Tracks which point colors changed since the last upload, so that only the
+   * dirty ranges of GPU buffers need rewriting.
+   */
+  private static class ColorDiff {
+
+    private int[] lastColors = null;
+
+    private final DirtySpans dirty = new DirtySpans();
+
+    private void reset() {
+      this.lastColors = null;
+    }
+
+    /**
+     * Diffs the colors against those from the last call
+     *
+     * @param colors New point colors
+     * @return true if anything needs uploading
+     */
+    private boolean update(int[] colors) {
+      this.dirty.begin();
+      if ((this.lastColors == null) || (this.lastColors.length != colors.length)) {
+        this.lastColors = new int[colors.length];
+        System.arraycopy(colors, 0, this.lastColors, 0, colors.length);
+        return this.dirty.setFull();
+      }
+
+      final int[] lastColors = this.lastColors;
+      for (int i = 0; i < colors.length; ++i) {
+        final int c = colors[i];
+        if (c != lastColors[i]) {
+          lastColors[i] = c;
+          this.dirty.add(i);
+        }
+      }
+      return this.dirty.end(colors.length);
+    }
+  }
+
+  /**
+   * Bounding volume hierarchy over the points of a model, used to cull points
+   * outside the view frustum. Points are not reordered, since colors and the GPU
+   * buffers are indexed by point, so the leaves are chunks of consecutive points.
+   * A fixture's points are consecutive in the model, so chunks are spatially
+   * coherent in practice. The tree is a complete binary tree stored in arrays,
+   * node n has children 2n and 2n+1, leaves start at index numLeaves.
+   */
+  private static class ChunkTree {
+
+    // Number of points in each leaf chunk
+    private static final int CHUNK_SIZE = 512;
+
+    // Visible chunks separated by fewer than this many culled chunks are drawn together
+    private static final int MERGE_GAP = 2;
+
+    private int numPoints = 0;
+    private int numChunks = 0;
+    private int numLeaves = 0;
+
+    // Bounds of each node, min xyz then max xyz
+    private float[] bounds = new float[0];
+
+    // Start (inclusive) and end (exclusive) point index pairs of visible ranges
+    private int[] ranges = new int[0];
+    private int numRanges = 0;
+
+    // Bounds of the chunks in each visible range, min xyz then max xyz
+    private float[] rangeBounds = new float[0];
+
+    private void build(LXModel model) {
+      this.numPoints = model.size;
+      this.numChunks = (model.size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      int numLeaves = 1;
+      while (numLeaves < this.numChunks) {
+        numLeaves <<= 1;
+      }
+      this.numLeaves = numLeaves;
+      if (this.bounds.length != 2 * numLeaves * 6) {
+        this.bounds = new float[2 * numLeaves * 6];
+      }
+      if (this.ranges.length != 2 * this.numChunks) {
+        this.ranges = new int[2 * this.numChunks];
+        this.rangeBounds = new float[6 * this.numChunks];
+      }
+
+      // Leaves, empty ones are left with inverted bounds that never intersect
+      final float[] bounds = this.bounds;
+      for (int n = numLeaves; n < 2 * numLeaves; ++n) {
+        setEmpty(n);
+      }
+      int index = 0;
       for (LXPoint p : model.points) {
-        buffer.putFloat(p.x);
-        buffer.putFloat(p.y);
-        buffer.putFloat(p.z);
-        buffer.putFloat(0f);
-        buffer.putFloat(0f);
+        final int i = 6 * (numLeaves + index / CHUNK_SIZE);
+        bounds[i] = Math.min(bounds[i], p.x);
+        bounds[i+1] = Math.min(bounds[i+1], p.y);
+        bounds[i+2] = Math.min(bounds[i+2], p.z);
+        bounds[i+3] = Math.max(bounds[i+3], p.x);
+        bounds[i+4] = Math.max(bounds[i+4], p.y);
+        bounds[i+5] = Math.max(bounds[i+5], p.z);
+        ++index;
+      }
 
-        buffer.putFloat(p.x);
-        buffer.putFloat(p.y);
-        buffer.putFloat(p.z);
-        buffer.putFloat(1f);
-        buffer.putFloat(0f);
+      // Internal nodes bottom-up
+      for (int n = numLeaves - 1; n >= 1; --n) {
+        final int i = 6 * n, l = 12 * n, r = 12 * n + 6;
+        bounds[i] = Math.min(bounds[l], bounds[r]);
+        bounds[i+1] = Math.min(bounds[l+1], bounds[r+1]);
+        bounds[i+2] = Math.min(bounds[l+2], bounds[r+2]);
+        bounds[i+3] = Math.max(bounds[l+3], bounds[r+3]);
+        bounds[i+4] = Math.max(bounds[l+4], bounds[r+4]);
+        bounds[i+5] = Math.max(bounds[l+5], bounds[r+5]);
+      }
+    }
 
-        buffer.putFloat(p.x);
-        buffer.putFloat(p.y);
-        buffer.putFloat(p.z);
-        buffer.putFloat(0f);
-        buffer.putFloat(1f);
+    private void setEmpty(int node) {
+      final int i = 6 * node;
+      this.bounds[i] = this.bounds[i+1] = this.bounds[i+2] = Float.POSITIVE_INFINITY;
+      this.bounds[i+3] = this.bounds[i+4] = this.bounds[i+5] = Float.NEGATIVE_INFINITY;
+    }
 
-        buffer.putFloat(p.x);
-        buffer.putFloat(p.y);
-        buffer.putFloat(p.z);
-        buffer.putFloat(0f);
-        buffer.putFloat(1f);
+    /**
+     * Finds the ranges of points that may be visible
+     *
+     * @param frustum View frustum
+     * @param radius Distance around each point center covered by its sprite
+     * @return Number of visible ranges
+     */
+    private int cull(FrustumIntersection frustum, float radius) {
+      this.numRanges = 0;
+      if (this.numChunks > 0) {
+        cull(frustum, radius, 1, 0, this.numLeaves);
+      }
+      return this.numRanges;
+    }
 
-        buffer.putFloat(p.x);
-        buffer.putFloat(p.y);
-        buffer.putFloat(p.z);
-        buffer.putFloat(1f);
-        buffer.putFloat(0f);
+    private void cull(FrustumIntersection frustum, float r, int node, int firstLeaf, int numLeaves) {
+      if (firstLeaf >= this.numChunks) {
+        return;
+      }
+      final int i = 6 * node;
+      final float[] b = this.bounds;
+      if (b[i] > b[i+3]) {
+        // Empty
+        return;
+      }
+      // NOTE: bounds are of the point centers, grow them by the sprite radius so
+      // that points just off screen with big sprites still get drawn
+      final int result = frustum.intersectAab(b[i] - r, b[i+1] - r, b[i+2] - r, b[i+3] + r, b[i+4] + r, b[i+5] + r);
+      if (result >= 0) {
+        // Outside one of the planes
+        return;
+      }
+      if ((result == FrustumIntersection.INSIDE) || (numLeaves == 1)) {
+        addRange(node, firstLeaf, Math.min(firstLeaf + numLeaves, this.numChunks));
+        return;
+      }
+      final int half = numLeaves >> 1;
+      cull(frustum, r, 2 * node, firstLeaf, half);
+      cull(frustum, r, 2 * node + 1, firstLeaf + half, half);
+    }
 
-        buffer.putFloat(p.x);
-        buffer.putFloat(p.y);
-        buffer.putFloat(p.z);
-        buffer.putFloat(1f);
-        buffer.putFloat(1f);
+    private void addRange(int node, int startChunk, int endChunk) {
+      final int start = startChunk * CHUNK_SIZE;
+      final int end = Math.min(endChunk * CHUNK_SIZE, this.numPoints);
+      final float[] b = this.bounds, rb = this.rangeBounds;
+      final int i = 6 * node;
+      if ((this.numRanges > 0) && (start - this.ranges[2 * this.numRanges - 1] <= MERGE_GAP * CHUNK_SIZE)) {
+        this.ranges[2 * this.numRanges - 1] = end;
+        final int r = 6 * (this.numRanges - 1);
+        rb[r] = Math.min(rb[r], b[i]);
+        rb[r+1] = Math.min(rb[r+1], b[i+1]);
+        rb[r+2] = Math.min(rb[r+2], b[i+2]);
+        rb[r+3] = Math.max(rb[r+3], b[i+3]);
+        rb[r+4] = Math.max(rb[r+4], b[i+4]);
+        rb[r+5] = Math.max(rb[r+5], b[i+5]);
+      } else {
+        this.ranges[2 * this.numRanges] = start;
+        this.ranges[2 * this.numRanges + 1] = end;
+        System.arraycopy(b, i, rb, 6 * this.numRanges, 6);
+        ++this.numRanges;
+      }
+    }
+
+    /**
+     * Depth of the center of a visible range's bounds
+     *
+     * @param view View
+     * @param range Index of the range
+     * @return Depth for sorting in the render queue
+     */
+    private float getRangeDepth(View view, int range) {
+      final float[] rb = this.rangeBounds;
+      final int r = 6 * range;
+      return view.getDepth(
+        .5f * (rb[r] + rb[r+3]),
+        .5f * (rb[r+1] + rb[r+4]),
+        .5f * (rb[r+2] + rb[r+5])
+      );
+    }
+  }
+
+  /**
+   * A downsampled version of the model, in which the points falling in each cell
+   * of a voxel grid are drawn as a single point at their centroid, with the
+   * average of their colors.
+   */
+  private static class DetailLevel {
+
+    // Edge length of each cell in world units
+    private final float cellSize;
+
+    private final int numCells;
+
+    // Index of the cell containing each point
+    private final int[] cellOf;
+
+    private final int[] cellCounts;
+
+    // Cell centroids, xyz triples
+    private final float[] centroids;
+
+    // Scratch space for averaging colors
+    private final int[] sumA, sumR, sumG, sumB;
+
+    // Per-instance cell centroids and colors, in the INSTANCED mode layout
+    private DynamicVertexBuffer buffer = null;
+
+    private long frameSequence = NO_FRAME;
+
+    /**
+     * Computes the cell centroids for a level. This touches no GPU resources, so
+     * may be run on a background thread.
+     */
+    private DetailLevel(LXModel model, float cellSize, int numCells, int[] cellOf) {
+      this.cellSize = cellSize;
+      this.numCells = numCells;
+      this.cellOf = cellOf;
+      this.cellCounts = new int[numCells];
+      this.sumA = new int[numCells];
+      this.sumR = new int[numCells];
+      this.sumG = new int[numCells];
+      this.sumB = new int[numCells];
+
+      final float[] centroids = this.centroids = new float[3 * numCells];
+      int index = 0;
+      for (LXPoint p : model.points) {
+        final int cell = cellOf[index++];
+        ++this.cellCounts[cell];
+        centroids[3*cell] += p.x;
+        centroids[3*cell+1] += p.y;
+        centroids[3*cell+2] += p.z;
+      }
+      for (int i = 0; i < numCells; ++i) {
+        final float count = this.cellCounts[i];
+        centroids[3*i] /= count;
+        centroids[3*i+1] /= count;
+        centroids[3*i+2] /= count;
+      }
+    }
+
+    /**
+     * Creates the instance buffer, must be called on the UI thread
+     *
+     * @param lx GLX instance
+     */
+    private void createBuffer(GLX lx) {
+      this.buffer = new DynamicVertexBuffer(lx, this.numCells, INSTANCE_ATTRIBUTES);
+      final ByteBuffer instanceData = this.buffer.getVertexData();
+      int offset = 0;
+      for (int i = 0; i < this.numCells; ++i) {
+        instanceData.putFloat(offset, this.centroids[3*i]);
+        instanceData.putFloat(offset + Float.BYTES, this.centroids[3*i+1]);
+        instanceData.putFloat(offset + 2 * Float.BYTES, this.centroids[3*i+2]);
+        instanceData.putFloat(offset + 3 * Float.BYTES, 1f);
+        offset += INSTANCE_STRIDE;
+      }
+    }
+
+    /**
+     * Averages the point colors into their cells and uploads them
+     *
+     * @param colors Point colors
+     */
+    private void updateColors(int[] colors) {
+      final int[] cellOf = this.cellOf;
+      final int[] sumA = this.sumA, sumR = this.sumR, sumG = this.sumG, sumB = this.sumB;
+      for (int i = 0; i < this.numCells; ++i) {
+        sumA[i] = sumR[i] = sumG[i] = sumB[i] = 0;
+      }
+      for (int i = 0; i < colors.length; ++i) {
+        final int c = colors[i];
+        final int cell = cellOf[i];
+        sumA[cell] += (c >>> 24) & 0xff;
+        sumR[cell] += (c >>> 16) & 0xff;
+        sumG[cell] += (c >>> 8) & 0xff;
+        sumB[cell] += c & 0xff;
+      }
+
+      // Same BGRA component order as the INSTANCED mode colors
+      final ByteBuffer instanceData = this.buffer.getVertexData();
+      int offset = INSTANCE_COLOR_OFFSET;
+      for (int i = 0; i < this.numCells; ++i) {
+        final float scale = 1f / (255f * this.cellCounts[i]);
+        instanceData.putFloat(offset, sumB[i] * scale);
+        instanceData.putFloat(offset + Float.BYTES, sumG[i] * scale);
+        instanceData.putFloat(offset + 2 * Float.BYTES, sumR[i] * scale);
+        instanceData.putFloat(offset + 3 * Float.BYTES, sumA[i] * scale);
+        offset += INSTANCE_STRIDE;
+      }
+      this.buffer.update();
+    }
+
+    private void dispose() {
+      if (this.buffer != null) {
+        this.buffer.dispose();
+        this.buffer = null;
+      }
+    }
+  }
+
+  /**
+   * Open addressing map from grid cell keys to cell indices, cleared and reused
+   * for each level without boxing.
+   */
+  private static class CellIndex {
+
+    private static final long EMPTY = -1;
+
+    private long[] keys = new long[0];
+    private int[] values = new int[0];
+    private int mask = 0;
+
+    /**
+     * Empties the map, making room for the given number of keys
+     *
+     * @param capacity Maximum number of keys that will be added
+     */
+    private void clear(int capacity) {
+      int size = 2;
+      while (size < 2 * capacity) {
+        size <<= 1;
+      }
+      if (this.keys.length != size) {
+        this.keys = new long[size];
+        this.values = new int[size];
+        this.mask = size - 1;
+      }
+      Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**
+     * Looks up a key, adding it with the given value if not present
+     *
+     * @param key Cell key, must not be negative
+     * @param value Value to add if the key is new
+     * @return Existing value for the key, or the given value if it was added
+     */
+    private int getOrPut(long key, int value) {
+      int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+      while (true) {
+        final long k = this.keys[slot];
+        if (k == key) {
+          return this.values[slot];
+        }
+        if (k == EMPTY) {
+          this.keys[slot] = key;
+          this.values[slot] = value;
+          return value;
+        }
+        slot = (slot + 1) & this.mask;
+      }
+    }
+  }
+
+  /**
+   * Detail levels for a model, built on the geometry thread. The UI thread
+   * polls for the result and creates the GPU buffers.
+   */
+  private static class PendingDetailLevels implements Runnable {
+
+    private final LXModel model;
+
+    private volatile List<DetailLevel> levels = null;
+    private volatile boolean cancelled = false;
+
+    private PendingDetailLevels(LXModel model) {
+      this.model = model;
+    }
+
+    @Override
+    public void run() {
+      if (this.cancelled) {
+        return;
+      }
+      final List<DetailLevel> levels = new ArrayList<DetailLevel>();
+      try {
+        buildDetailLevels(this.model, levels);
+      } catch (Exception x) {
+        GLX.error(x, "UIPointCloud failed to build detail levels in background");
+        levels.clear();
+      }
+      this.levels = levels;
+    }
+
+    private void cancel() {
+      this.cancelled = true;
+    }
+  }
+
+  // The finest detail level grid divides the largest model dimension into this many cells
+  private static final int LOD_GRID_SIZE = 1024;
+
+  // A coarser level is only kept if it has at most this fraction of the cells of the previous
+  private static final float LOD_REDUCTION = .5f;
+
+  // No levels coarser than this many cells
+  private static final int LOD_MIN_CELLS = 64;
+
+  // A level is used when its cells project to no more than this many pixels
+  private static final float LOD_MAX_CELL_PIXELS = 1f;
+
+  /**
+   * Builds progressively coarser detail levels for a model. Each level is built
+   * from the cells of the previous by halving the grid resolution, so only the
+   * first level touches every point.
+   *
+   * @param model Model
+   * @param levels List to add levels to, finest first
+   */
+  private static void buildDetailLevels(LXModel model, List<DetailLevel> levels) {
+    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+    for (LXPoint p : model.points) {
+      minX = Math.min(minX, p.x);
+      minY = Math.min(minY, p.y);
+      minZ = Math.min(minZ, p.z);
+      maxX = Math.max(maxX, p.x);
+      maxY = Math.max(maxY, p.y);
+      maxZ = Math.max(maxZ, p.z);
+    }
+    final float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+    if (!(extent > 0)) {
+      return;
+    }
+
+    // Grid coordinates of each point at the finest resolution
+    float cellSize = extent / LOD_GRID_SIZE;
+    final int numPoints = model.size;
+    int[] cellX = new int[numPoints];
+    int[] cellY = new int[numPoints];
+    int[] cellZ = new int[numPoints];
+    int index = 0;
+    for (LXPoint p : model.points) {
+      cellX[index] = (int) ((p.x - minX) / cellSize);
+      cellY[index] = (int) ((p.y - minY) / cellSize);
+      cellZ[index] = (int) ((p.z - minZ) / cellSize);
+      ++index;
+    }
+
+    // Each point starts in its own "cell", then cells are merged level by level
+    int[] cellOf = new int[numPoints];
+    for (int i = 0; i < numPoints; ++i) {
+      cellOf[i] = i;
+    }
+    int numCells = numPoints;
+    int lastNumCells = numPoints;
+    final CellIndex cellIndex = new CellIndex();
+    for (int shift = 0; (1 << shift) <= LOD_GRID_SIZE; ++shift) {
+      if (shift > 0) {
+        cellSize *= 2;
+        for (int i = 0; i < numCells; ++i) {
+          cellX[i] >>= 1;
+          cellY[i] >>= 1;
+          cellZ[i] >>= 1;
+        }
+      }
+
+      // Merge cells which now share grid coordinates
+      cellIndex.clear(numCells);
+      final int[] parentOf = new int[numCells];
+      int numParents = 0;
+      for (int i = 0; i < numCells; ++i) {
+        final long key = ((long) cellX[i] << 42) | ((long) cellY[i] << 21) | cellZ[i];
+        final int parent = cellIndex.getOrPut(key, numParents);
+        if (parent == numParents) {
+          cellX[numParents] = cellX[i];
+          cellY[numParents] = cellY[i];
+          cellZ[numParents] = cellZ[i];
+          ++numParents;
+        }
+        parentOf[i] = parent;
+      }
+      final int[] nextCellOf = new int[numPoints];
+      for (int i = 0; i < numPoints; ++i) {
+        nextCellOf[i] = parentOf[cellOf[i]];
+      }
+      cellOf = nextCellOf;
+      numCells = numParents;
+
+      if (numCells <= lastNumCells * LOD_REDUCTION) {
+        levels.add(new DetailLevel(model, cellSize, numCells, cellOf));
+        lastNumCells = numCells;
+      }
+      if (numCells <= LOD_MIN_CELLS) {
+        break;
       }
     }
   }
@@ -142,57 +1076,444 @@ public class UIPointCloud extends UI3dComponent implements LXSerializable {
     new BoundedParameter("Point Size", 3, 1, 101)
     .setDescription("Size of points rendered in the preview display");
 
+  public final BooleanParameter culling =
+    new BooleanParameter("Culling", true)
+    .setDescription("Whether to skip drawing points outside of the camera view");
+
+  public final BooleanParameter lod =
+    new BooleanParameter("LOD", false)
+    .setDescription("Whether to draw merged points when zoomed out far enough that many fall in one pixel");
+
   private final GLX lx;
 
-  private final Program program;
+  private final EnumMap<Mode, Program> programs = new EnumMap<Mode, Program>(Mode.class);
   private final Texture texture;
 
-  private VertexBuffer modelBuffer;
+  private Mode mode = Mode.VERTEX;
+  private Mode bufferMode = null;
+
+  private DynamicVertexBuffer modelBuffer;
+  private IndexBuffer modelIndexBuffer;
+  private Quantization modelQuantization = null;
+  private final FloatBuffer modelTransform = MemoryUtil.memAllocFloat(16);
   private DynamicVertexBuffer colorBuffer;
 
+  private VertexBuffer quadBuffer;
+  private DynamicVertexBuffer instanceBuffer;
+
+  private DynamicVertexBuffer positionBuffer;
+  private DynamicTexture colorTexture;
+
+  // Static geometry being packed in the background, the previous geometry
+  // continues to render until this is ready
+  private PendingGeometry pendingGeometry = null;
+
   // This is the model that our current vertex buffers (UI thread) is based upon,
   // which could be a frame behind the engine!
   private LXModel model = null;
 
   private int modelGeneration = -1;
 
+  private final ColorDiff colorDiff = new ColorDiff();
+
+  private final DirtySpans geometrySpans = new DirtySpans();
+
+  private final ChunkTree chunkTree = new ChunkTree();
+
+  // Detail levels for the current model, finest first
+  private final List<DetailLevel> detailLevels = new ArrayList<DetailLevel>();
+  private LXModel detailModel = null;
+  private int detailModelGeneration = -1;
+
+  // Detail levels being built in the background, full detail is drawn until ready
+  private PendingDetailLevels pendingDetailLevels = null;
+
+  // Only complain once if the renderer can't draw detail levels at all
+  private boolean detailLevelsUnsupported = false;
+
+  private static final long NO_FRAME = -1;
+
+  // Sequence number of the last GLX.getUIFrame() whose colors were uploaded
+  private long frameSequence = NO_FRAME;
+
   public UIPointCloud(GLX lx) {
     this.lx = lx;
-    this.program = new Program(lx);
-    this.texture = new Texture("led.ktx");
+    this.programs.put(Mode.VERTEX, new Program(lx, Mode.VERTEX));
+    this.texture = new Texture(lx, "led.ktx");
     this.colorBuffer = null;
     this.modelBuffer = null;
+    this.modelIndexBuffer = null;
+    this.quadBuffer = null;
+    this.instanceBuffer = null;
+    this.positionBuffer = null;
+    this.colorTexture = null;
+
+    // Changes here alter the scene even if the engine frame doesn't
+    this.pointSize.addListener((p) -> redraw());
+    this.culling.addListener((p) -> redraw());
+    this.lod.addListener((p) -> redraw());
+  }
+
+  /**
+   * Sets the strategy used to render points. Takes effect on the next frame. If the
+   * requested mode is not supported by the renderer, VERTEX mode is used.
+   *
+   * @param mode Render mode
+   * @return this
+   */
+  public UIPointCloud setMode(Mode mode) {
+    this.mode = mode;
+    redraw();
+    return this;
+  }
+
+  public Mode getMode() {
+    return this.mode;
   }
 
   @Override
   public void dispose() {
     this.texture.dispose();
+    MemoryUtil.memFree(this.modelTransform);
+    disposeBuffers();
+    for (Program program : this.programs.values()) {
+      program.dispose();
+    }
+    this.programs.clear();
+  }
+
+  private void disposeBuffers() {
+    if (this.pendingGeometry != null) {
+      this.pendingGeometry.cancel();
+      this.pendingGeometry = null;
+    }
     if (this.modelBuffer != null) {
       this.modelBuffer.dispose();
+      this.modelBuffer = null;
     }
     if (this.colorBuffer != null) {
       this.colorBuffer.dispose();
+      this.colorBuffer = null;
+    }
+    if (this.modelIndexBuffer != null) {
+      this.modelIndexBuffer.dispose();
+      this.modelIndexBuffer = null;
+    }
+    if (this.quadBuffer != null) {
+      this.quadBuffer.dispose();
+      this.quadBuffer = null;
+    }
+    if (this.instanceBuffer != null) {
+      this.instanceBuffer.dispose();
+      this.instanceBuffer = null;
+    }
+    if (this.positionBuffer != null) {
+      this.positionBuffer.dispose();
+      this.positionBuffer = null;
     }
-    this.program.dispose();
+    if (this.colorTexture != null) {
+      this.colorTexture.dispose();
+      this.colorTexture = null;
+    }
+    disposeDetailLevels();
+  }
+
+  private void disposeDetailLevels() {
+    if (this.pendingDetailLevels != null) {
+      this.pendingDetailLevels.cancel();
+      this.pendingDetailLevels = null;
+    }
+    for (DetailLevel level : this.detailLevels) {
+      level.dispose();
+    }
+    this.detailLevels.clear();
+    this.detailModel = null;
+  }
+
+  private String getUnsupportedReason(Mode mode, LXModel model) {
+    if (mode == Mode.VERTEX) {
+      return null;
+    }
+    if ((bgfx_get_caps().supported() & BGFX_CAPS_INSTANCING) == 0) {
+      return "instancing not supported by renderer";
+    }
+    if (mode == Mode.TEXTURE) {
+      if (this.lx.getRenderer() == BGFX_RENDERER_TYPE_DIRECT3D9) {
+        return "vertex texture fetch not supported by renderer";
+      }
+      if (getColorTextureHeight(model.size) > bgfx_get_caps().limits().maxTextureSize()) {
+        return "model too large for color texture";
+      }
+    }
+    if (!this.programs.containsKey(mode)) {
+      try {
+        this.programs.put(mode, new Program(this.lx, mode));
+      } catch (Exception x) {
+        GLX.error(x, "UIPointCloud could not load shader for " + mode + " mode");
+        return "shader not available";
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Determines which mode we can actually render in, falling back to VERTEX
+   * if the renderer or available shaders don't support the requested mode.
+   *
+   * @param model Model that is about to be rendered
+   * @return Mode to render with
+   */
+  private Mode resolveMode(LXModel model) {
+    if ((this.mode != this.bufferMode) || (model != this.model)) {
+      String unsupported = getUnsupportedReason(this.mode, model);
+      if (unsupported != null) {
+        GLX.error("UIPointCloud " + this.mode + " mode unavailable (" + unsupported + "), reverting to VERTEX");
+        this.mode = Mode.VERTEX;
+      }
+    }
+    return this.mode;
+  }
+
+  // Color texture width is a power of two, so that the shader's index math is exact
+  private static int getColorTextureWidth(int numPoints) {
+    int width = 1;
+    while (width * width < numPoints) {
+      width <<= 1;
+    }
+    return Math.min(width, bgfx_get_caps().limits().maxTextureSize());
+  }
+
+  private static int getColorTextureHeight(int numPoints) {
+    int width = getColorTextureWidth(numPoints);
+    return (numPoints + width - 1) / width;
   }
 
   private void buildModelBuffer() {
-    if (this.modelBuffer != null) {
-      this.modelBuffer.dispose();
+    switch (this.bufferMode) {
+    case INSTANCED:
+      // Positions live alongside colors in the instance data, they are cheap to
+      // write and must be uploaded along with the colors
+      this.colorDiff.reset();
+      this.frameSequence = NO_FRAME;
+      if (this.quadBuffer == null) {
+        this.quadBuffer = new QuadBuffer(lx);
+      }
+      packInstancePositions(this.model, this.instanceBuffer.getVertexData(), 0, this.model.size);
+      break;
+    default:
+    case TEXTURE:
+    case VERTEX:
+      if ((this.bufferMode == Mode.TEXTURE) && (this.quadBuffer == null)) {
+        this.quadBuffer = new QuadBuffer(lx);
+      }
+      if (this.pendingGeometry != null) {
+        this.pendingGeometry.cancel();
+      }
+      this.pendingGeometry = new PendingGeometry(this.bufferMode, this.model);
+      GEOMETRY_EXECUTOR.execute(this.pendingGeometry);
+      break;
+    }
+  }
+
+  private DynamicVertexBuffer getGeometryBuffer() {
+    switch (this.bufferMode) {
+    case TEXTURE:
+      return this.positionBuffer;
+    case INSTANCED:
+      return this.instanceBuffer;
+    default:
+    case VERTEX:
+      return this.modelBuffer;
+    }
+  }
+
+  /**
+   * Updates the static geometry after the model's generation has changed but its
+   * size has not. Typically only a few fixtures have moved, and since a fixture's
+   * points are contiguous in the model, the geometry is diffed against the point
+   * positions and only the ranges that moved are repacked and uploaded. Falls back
+   * to a full rebuild when most of the model has changed.
+   */
+  private void updateModelBuffer() {
+    if ((this.pendingGeometry != null) || !hasGeometry()) {
+      // Geometry is still being built from an older generation, start over
+      buildModelBuffer();
+      return;
+    }
+
+    final DynamicVertexBuffer geometry = getGeometryBuffer();
+    final ByteBuffer vertexData = geometry.getVertexData();
+    final int bytesPerPoint = getGeometryBytesPerPoint(this.bufferMode);
+    final DirtySpans dirty = this.geometrySpans;
+    dirty.begin();
+    int index = 0;
+    int offset = 0;
+    final Quantization quantization = this.modelQuantization;
+    for (LXPoint p : this.model.points) {
+      boolean moved;
+      if (this.bufferMode == Mode.VERTEX) {
+        final int x = quantization.quantizeX(p.x);
+        final int y = quantization.quantizeY(p.y);
+        final int z = quantization.quantizeZ(p.z);
+        if (!Quantization.inRange(x) || !Quantization.inRange(y) || !Quantization.inRange(z)) {
+          // Moved outside the quantized bounds, start over with new bounds
+          buildModelBuffer();
+          return;
+        }
+        moved =
+          (vertexData.getShort(offset) != x) ||
+          (vertexData.getShort(offset + Short.BYTES) != y) ||
+          (vertexData.getShort(offset + 2 * Short.BYTES) != z);
+      } else {
+        moved =
+          (vertexData.getFloat(offset) != p.x) ||
+          (vertexData.getFloat(offset + Float.BYTES) != p.y) ||
+          (vertexData.getFloat(offset + 2 * Float.BYTES) != p.z);
+      }
+      if (moved) {
+        dirty.add(index);
+      }
+      offset += bytesPerPoint;
+      ++index;
+    }
+    if (!dirty.end(this.model.size)) {
+      return;
+    }
+    if (dirty.full) {
+      if (this.bufferMode == Mode.INSTANCED) {
+        packInstancePositions(this.model, vertexData, 0, this.model.size);
+        geometry.update();
+      } else {
+        buildModelBuffer();
+      }
+      return;
+    }
+
+    final int verticesPerPoint = getGeometryVerticesPerPoint(this.bufferMode);
+    for (int i = 0; i < dirty.numSpans; ++i) {
+      final int start = dirty.spans[2*i];
+      final int end = dirty.spans[2*i+1];
+      packGeometry(this.bufferMode, this.model, vertexData, start, end, quantization);
+      geometry.update(start * verticesPerPoint, (end - start) * verticesPerPoint);
+    }
+  }
+
+  private DynamicVertexBuffer createGeometryBuffer(Mode mode, ByteBuffer vertexData, int numPoints) {
+    switch (mode) {
+    case TEXTURE:
+      return new DynamicVertexBuffer(lx, vertexData, numPoints, POSITION_ATTRIBUTES);
+    default:
+    case VERTEX:
+      return new DynamicVertexBuffer(lx, vertexData, numPoints * MODEL_VERTICES_PER_POINT, MODEL_ATTRIBUTES);
+    }
+  }
+
+  /**
+   * Swaps in static geometry that has finished packing in the background
+   */
+  private void swapPendingGeometry() {
+    if (this.pendingGeometry == null) {
+      return;
+    }
+    final PendingGeometry pending = this.pendingGeometry;
+    ByteBuffer vertexData;
+    if (pending.failed) {
+      // Last resort, pack the geometry on this thread
+      if (pending.mode == Mode.VERTEX) {
+        pending.quantization = new Quantization(pending.model);
+      }
+      vertexData = MemoryUtil.memAlloc(pending.numPoints * getGeometryBytesPerPoint(pending.mode));
+      packGeometry(pending.mode, pending.model, vertexData, 0, pending.numPoints, pending.quantization);
+    } else {
+      vertexData = pending.take();
+      if (vertexData == null) {
+        return;
+      }
+    }
+    this.pendingGeometry = null;
+    DynamicVertexBuffer geometry = createGeometryBuffer(pending.mode, vertexData, pending.numPoints);
+    switch (pending.mode) {
+    case TEXTURE:
+      if (this.positionBuffer != null) {
+        this.positionBuffer.dispose();
+      }
+      this.positionBuffer = geometry;
+      break;
+    default:
+    case VERTEX:
+      if (this.modelBuffer != null) {
+        this.modelBuffer.dispose();
+      }
+      this.modelBuffer = geometry;
+      this.modelQuantization = pending.quantization;
+      this.modelQuantization.getTransform(this.modelTransform);
+      break;
+    }
+  }
+
+  /**
+   * Whether the current static geometry matches the current model size. While
+   * the model size is changing, there's nothing sensible to draw until the new
+   * geometry is ready.
+   *
+   * @return Whether there is geometry to draw
+   */
+  private boolean hasGeometry() {
+    switch (this.bufferMode) {
+    case TEXTURE:
+      return (this.positionBuffer != null) && (this.positionBuffer.getNumVertices() == this.model.size);
+    case INSTANCED:
+      return true;
+    default:
+    case VERTEX:
+      return (this.modelBuffer != null) && (this.modelBuffer.getNumVertices() == this.model.size * MODEL_VERTICES_PER_POINT);
     }
-    this.modelBuffer = new ModelBuffer(lx);
   }
 
   private void buildColorBuffer() {
-    if (this.colorBuffer != null) {
-      this.colorBuffer.dispose();
+    this.colorDiff.reset();
+    this.frameSequence = NO_FRAME;
+    switch (this.bufferMode) {
+    case TEXTURE:
+      if (this.colorTexture != null) {
+        this.colorTexture.dispose();
+      }
+      this.colorTexture = new DynamicTexture(lx, getColorTextureWidth(this.model.size), getColorTextureHeight(this.model.size));
+      break;
+    case INSTANCED:
+      if (this.instanceBuffer != null) {
+        this.instanceBuffer.dispose();
+      }
+      this.instanceBuffer = new DynamicVertexBuffer(lx, this.model.size, INSTANCE_ATTRIBUTES);
+      break;
+    default:
+    case VERTEX:
+      if (this.colorBuffer != null) {
+        this.colorBuffer.dispose();
+      }
+      this.colorBuffer = new DynamicVertexBuffer(lx, this.model.size * MODEL_VERTICES_PER_POINT, VertexDeclaration.ATTRIB_COLOR0);
+      if (this.modelIndexBuffer != null) {
+        this.modelIndexBuffer.dispose();
+      }
+      this.modelIndexBuffer = new ModelIndexBuffer(lx, this.model.size);
+      break;
     }
-    this.colorBuffer = new DynamicVertexBuffer(lx, this.model.size * ModelBuffer.VERTICES_PER_POINT, VertexDeclaration.ATTRIB_COLOR0);
+  }
+
+  /**
+   * Point clouds keep all of their state to themselves and only read the shared
+   * UI frame, so they may be drawn on a worker thread. Buffer creation and updates
+   * go through the bgfx resource API, which is thread-safe. The view is only read,
+   * its frustum having been computed on the UI thread when the camera was set.
+   */
+  @Override
+  protected boolean isParallelDrawSafe() {
+    return true;
   }
 
   @Override
-  public void onDraw(UI ui, View view) {
-    LXEngine.Frame frame = this.lx.uiFrame;
+  protected void onDraw(UI ui, View view, long encoder) {
+    LXEngine.Frame frame = this.lx.getUIFrame();
     LXModel frameModel = frame.getModel();
     int frameModelGeneration = frameModel.getGeneration();
 
@@ -201,46 +1522,297 @@ public class UIPointCloud extends UI3dComponent implements LXSerializable {
       return;
     }
 
+    // Has the render mode changed? Start over with fresh buffers
+    Mode mode = resolveMode(frameModel);
+    if (this.bufferMode != mode) {
+      disposeBuffers();
+      this.bufferMode = mode;
+      this.model = null;
+    }
+
     // Is our buffer model out of date? Rebuild it if so...
     if (this.model != frameModel) {
       LXModel oldModel = this.model;
       this.model = frameModel;
       this.modelGeneration = frameModelGeneration;
-      buildModelBuffer();
-      if ((this.colorBuffer == null) || (oldModel == null) || (oldModel.size != frameModel.size)) {
+      if ((oldModel == null) || (oldModel.size != frameModel.size)) {
         buildColorBuffer();
       }
-    } else if (this.modelGeneration != frameModelGeneration) {
-      // Model geometry (but not size) has changed, rebuild model buffer
       buildModelBuffer();
+      this.chunkTree.build(this.model);
+    } else if (this.modelGeneration != frameModelGeneration) {
+      // Model geometry (but not size) has changed, update what moved
+      updateModelBuffer();
+      this.chunkTree.build(this.model);
       this.modelGeneration = frameModelGeneration;
     }
 
-    // Update the color data
-    ByteBuffer colorData = this.colorBuffer.getVertexData();
-    colorData.rewind();
-    for (int c : frame.getColors()) {
-      for (int i = 0; i < ModelBuffer.VERTICES_PER_POINT; ++i) {
-        colorData.putInt(c);
+    // Pick up any geometry that finished building in the background, and
+    // keep the scene drawing until it does
+    swapPendingGeometry();
+    if (this.pendingGeometry != null) {
+      redraw();
+    }
+
+    // Zoomed out far enough to draw a merged level of detail? Then the full detail
+    // colors are left alone, the diff will catch up once we zoom back in
+    final long frameSequence = this.lx.getUIFrameSequence();
+    final int[] colors = frame.getColors();
+    if (this.lod.isOn()) {
+      final DetailLevel level = selectDetailLevel(view);
+      if (level != null) {
+        drawDetailLevel(view, encoder, level, colors, frameSequence);
+        return;
       }
     }
-    colorData.flip();
-    this.colorBuffer.update();
 
-    // Submit our drawing program!
-    this.program.submit(view);
+    // Upload whatever colors have changed since the last frame, nothing to do
+    // at all if this is the same frame we've already uploaded
+    if ((frameSequence != this.frameSequence) && this.colorDiff.update(colors)) {
+      final DirtySpans dirty = this.colorDiff.dirty;
+      if (dirty.full) {
+        updateColors(colors, 0, colors.length);
+      } else if (this.bufferMode == Mode.TEXTURE) {
+        // Texture updates are whole rows, do one band covering all the spans
+        final int[] spans = dirty.spans;
+        updateColors(colors, spans[0], spans[2 * dirty.numSpans - 1]);
+      } else {
+        final int[] spans = dirty.spans;
+        for (int i = 0; i < dirty.numSpans; ++i) {
+          updateColors(colors, spans[2*i], spans[2*i+1]);
+        }
+      }
+    }
+
+    this.frameSequence = frameSequence;
+
+    if (!hasGeometry()) {
+      return;
+    }
+
+    // Submit our drawing program, only for the parts of the model in view
+    final Program program = this.programs.get(this.bufferMode);
+    if (this.culling.isOn()) {
+      final int numRanges = this.chunkTree.cull(view.getFrustum(), getPointRadius(view));
+      final int[] ranges = this.chunkTree.ranges;
+      for (int i = 0; i < numRanges; ++i) {
+        submit(view, encoder, program, null, ranges[2*i], ranges[2*i+1] - ranges[2*i], this.chunkTree.getRangeDepth(view, i));
+      }
+    } else {
+      submit(view, encoder, program, null, 0, this.model.size, getModelDepth(view));
+    }
+  }
+
+  /**
+   * Scale of the point sprite quads in clip space, the u_pointScale shader uniform
+   */
+  private float getPointScale(View view) {
+    switch (getContext().projection.getEnum()) {
+    case ORTHOGRAPHIC:
+      return 2.0f * this.pointSize.getValuef() / view.getWidth();
+    default:
+    case PERSPECTIVE:
+      return 2.0f / view.getAspectRatio() * this.pointSize.getValuef();
+    }
+  }
+
+  /**
+   * World space radius around each point center that its sprite may cover. The
+   * quad is offset in clip space by half the point scale, which maps back to
+   * the same world distance at any depth, and its corners are sqrt(2) further.
+   */
+  private float getPointRadius(View view) {
+    return (float) Math.sqrt(2) * .5f * getPointScale(view) / view.getProjectionMatrix().m00();
+  }
+
+  /**
+   * Submits a range of points. Draws through an explicit encoder go straight to
+   * bgfx, otherwise they are added to the view's render queue to be sorted
+   * against the rest of the scene.
+   */
+  private void submit(View view, long encoder, Program program, DynamicVertexBuffer instances, int start, int count, float depth) {
+    if (encoder != ShaderProgram.NO_ENCODER) {
+      program.drawInstances = instances;
+      program.drawStart = start;
+      program.drawCount = count;
+      program.submit(encoder, view);
+      program.drawInstances = null;
+    } else {
+      view.getRenderQueue().add(program, program.getBgfxState(), depth, program, start, count, instances);
+    }
+  }
+
+  /**
+   * Depth of the center of the model's bounds, for sorting against other components
+   */
+  private float getModelDepth(View view) {
+    final float[] bounds = this.chunkTree.bounds;
+    return view.getDepth(
+      .5f * (bounds[6] + bounds[9]),
+      .5f * (bounds[7] + bounds[10]),
+      .5f * (bounds[8] + bounds[11])
+    );
+  }
+
+  /**
+   * Picks the coarsest detail level whose cells would be no bigger than a pixel
+   * at the part of the model nearest the camera, building levels as needed.
+   *
+   * @param view View being drawn
+   * @return Detail level, or null to draw the full model
+   */
+  private DetailLevel selectDetailLevel(View view) {
+    // Nearest point of the model bounds to the eye is where detail matters most
+    final Vector3f eye = getContext().getEye();
+    final float[] bounds = this.chunkTree.bounds;
+    final float x = Math.min(Math.max(eye.x, bounds[6]), bounds[9]);
+    final float y = Math.min(Math.max(eye.y, bounds[7]), bounds[10]);
+    final float z = Math.min(Math.max(eye.z, bounds[8]), bounds[11]);
+    final float pixelsPerUnit = view.getPixelsPerUnit(x, y, z);
+
+    // Don't bother building levels if even the finest would be visible
+    final float extent = Math.max(bounds[9] - bounds[6], Math.max(bounds[10] - bounds[7], bounds[11] - bounds[8]));
+    if (extent / LOD_GRID_SIZE * pixelsPerUnit > LOD_MAX_CELL_PIXELS) {
+      return null;
+    }
+
+    if ((this.detailModel != this.model) || (this.detailModelGeneration != this.modelGeneration)) {
+      disposeDetailLevels();
+      String unsupported = getUnsupportedReason(Mode.INSTANCED, this.model);
+      this.detailModel = this.model;
+      this.detailModelGeneration = this.modelGeneration;
+      if (unsupported != null) {
+        // NOTE: the parameter is left alone since this may be running on a draw
+        // worker thread, there are simply no levels for this model
+        if (!this.detailLevelsUnsupported) {
+          GLX.error("UIPointCloud LOD unavailable (" + unsupported + ")");
+          this.detailLevelsUnsupported = true;
+        }
+        return null;
+      }
+      this.pendingDetailLevels = new PendingDetailLevels(this.model);
+      GEOMETRY_EXECUTOR.execute(this.pendingDetailLevels);
+    }
+
+    // Pick up levels that finished building in the background, full detail
+    // is drawn until then
+    if (this.pendingDetailLevels != null) {
+      final List<DetailLevel> levels = this.pendingDetailLevels.levels;
+      if (levels == null) {
+        redraw();
+        return null;
+      }
+      for (DetailLevel level : levels) {
+        level.createBuffer(this.lx);
+        this.detailLevels.add(level);
+      }
+      this.pendingDetailLevels = null;
+    }
+
+    DetailLevel selected = null;
+    for (DetailLevel level : this.detailLevels) {
+      if (level.cellSize * pixelsPerUnit > LOD_MAX_CELL_PIXELS) {
+        break;
+      }
+      selected = level;
+    }
+    return selected;
+  }
+
+  private void drawDetailLevel(View view, long encoder, DetailLevel level, int[] colors, long frameSequence) {
+    if (level.frameSequence != frameSequence) {
+      level.updateColors(colors);
+      level.frameSequence = frameSequence;
+    }
+    if (this.quadBuffer == null) {
+      this.quadBuffer = new QuadBuffer(lx);
+    }
+    submit(view, encoder, this.programs.get(Mode.INSTANCED), level.buffer, 0, level.numCells, getModelDepth(view));
+  }
+
+  /**
+   * Repacks and uploads the colors of a range of points
+   *
+   * @param colors Point colors
+   * @param start First point index, inclusive
+   * @param end Last point index, exclusive
+   */
+  private void updateColors(int[] colors, int start, int end) {
+    final boolean full = (start == 0) && (end == colors.length);
+
+    switch (this.bufferMode) {
+    case TEXTURE:
+      // One texel per point. The texture is RGBA8, so the native-order ARGB ints land
+      // in the same BGRA byte order as the packed colors in VERTEX mode. Uploads are
+      // in whole rows, written straight into staging memory.
+      final int width = this.colorTexture.getWidth();
+      final int startRow = start / width;
+      final int endRow = (end + width - 1) / width;
+      final int startTexel = startRow * width;
+      final int numTexels = Math.min(endRow * width, colors.length) - startTexel;
+      IntBuffer colorTexels = this.colorTexture.beginUpdate(startRow, endRow - startRow).asIntBuffer();
+      colorTexels.put(colors, startTexel, numTexels);
+      while (colorTexels.hasRemaining()) {
+        // Unused texels past the last point
+        colorTexels.put(0);
+      }
+      this.colorTexture.commitUpdate();
+      break;
+
+    case INSTANCED:
+      // Update the color half of the instance data, positions were already
+      // written when the model buffer was built. Components are written in BGRA
+      // order to match the byte order of the packed colors in VERTEX mode.
+      ByteBuffer instanceData = this.instanceBuffer.getVertexData();
+      int offset = start * INSTANCE_STRIDE + INSTANCE_COLOR_OFFSET;
+      for (int i = start; i < end; ++i) {
+        final int c = colors[i];
+        instanceData.putFloat(offset, (c & 0xff) / 255f);
+        instanceData.putFloat(offset + Float.BYTES, ((c >>> 8) & 0xff) / 255f);
+        instanceData.putFloat(offset + 2 * Float.BYTES, ((c >>> 16) & 0xff) / 255f);
+        instanceData.putFloat(offset + 3 * Float.BYTES, ((c >>> 24) & 0xff) / 255f);
+        offset += INSTANCE_STRIDE;
+      }
+      if (full) {
+        this.instanceBuffer.update();
+      } else {
+        this.instanceBuffer.update(start, end - start);
+      }
+      break;
+
+    default:
+    case VERTEX:
+      // Every color in the range is rewritten, so it goes straight into staging memory
+      ByteBuffer colorData = this.colorBuffer.beginUpdate(start * MODEL_VERTICES_PER_POINT, (end - start) * MODEL_VERTICES_PER_POINT);
+      int position = 0;
+      for (int i = start; i < end; ++i) {
+        final int c = colors[i];
+        for (int v = 0; v < MODEL_VERTICES_PER_POINT; ++v) {
+          colorData.putInt(position, c);
+          position += Integer.BYTES;
+        }
+      }
+      this.colorBuffer.commitUpdate();
+      break;
+    }
   }
 
   private static final String KEY_POINT_SIZE = "pointSize";
+  private static final String KEY_CULLING = "culling";
+  private static final String KEY_LOD = "lod";
 
   @Override
   public void save(LX lx, JsonObject object) {
     object.addProperty(KEY_POINT_SIZE, this.pointSize.getValue());
+    object.addProperty(KEY_CULLING, this.culling.isOn());
+    object.addProperty(KEY_LOD, this.lod.isOn());
   }
 
   @Override
   public void load(LX lx, JsonObject object) {
     LXSerializable.Utils.loadDouble(this.pointSize, object, KEY_POINT_SIZE);
+    LXSerializable.Utils.loadBoolean(this.culling, object, KEY_CULLING);
+    LXSerializable.Utils.loadBoolean(this.lod, object, KEY_LOD);
 
   }
 
@@ -21,20 +21,23 @@ package heronarts.glx.ui.vg;
 import static org.lwjgl.system.MemoryUtil.*;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.lwjgl.nanovg.NVGColor;
 import org.lwjgl.nanovg.NVGLUFramebufferBGFX;
 import org.lwjgl.nanovg.NVGPaint;
 import org.lwjgl.system.MemoryStack;
-import org.lwjgl.system.MemoryUtil;
 
 import heronarts.glx.GLX;
 import heronarts.glx.GLXUtils;
+import heronarts.glx.ResourceTracker;
 import heronarts.glx.View;
 import heronarts.lx.LX;
 
@@ -138,24 +141,60 @@ public class VGraphics {
     }
   }
 
+  /**
+   * Decoded image data, shared by every Image loaded from the same resource path
+   */
+  private class ImageResource {
+    private final String path;
+    private final int id;
+    private final int width;
+    private final int height;
+    private int references = 0;
+
+    private ImageResource(String path, GLXUtils.ResourceBuffer imageData) {
+      this.path = path;
+      // NOTE: NanoVG decodes and copies the image immediately, the encoded
+      // data isn't needed once the image is created
+      try {
+        this.id = nvgCreateImageMem(vg, 0, imageData.getBuffer());
+      } finally {
+        imageData.dispose();
+      }
+      try (MemoryStack stack = MemoryStack.stackPush()) {
+        IntBuffer width = stack.mallocInt(1);
+        IntBuffer height = stack.mallocInt(1);
+        nvgImageSize(vg, this.id, width, height);
+        this.width = width.get(0);
+        this.height = height.get(0);
+      }
+    }
+
+    private void dispose() {
+      nvgDeleteImage(vg, this.id);
+    }
+  }
+
   public class Image {
     public final int id;
     public final int width;
     public final int height;
     public final Paint paint;
     private final NVGColor tint = NVGColor.create();
-    private final ByteBuffer imageData;
-
-    private Image(int id, ByteBuffer imageData, int w, int h, boolean is2x) {
-      this.id = id;
-      this.imageData = imageData;
+    private final ImageResource resource;
+    private boolean disposed = false;
+
+    private Image(ImageResource resource, boolean is2x) {
+      this.resource = resource;
+      this.id = resource.id;
+      int w = resource.width;
+      int h = resource.height;
       if (is2x) {
         w /= 2;
         h /= 2;
       }
       this.width = w;
       this.height = h;
-      this.paint = imagePattern(0, 0, w, h, id);
+      this.paint = imagePattern(0, 0, w, h, this.id);
       noTint();
     }
 
@@ -180,8 +219,10 @@ public class VGraphics {
     }
 
     public void dispose() {
-      nvgDeleteImage(vg, this.id);
-      MemoryUtil.memFree(this.imageData);
+      if (!this.disposed) {
+        this.disposed = true;
+        releaseImage(this.resource);
+      }
     }
   }
 
@@ -201,6 +242,7 @@ public class VGraphics {
 
   public class Framebuffer {
     private NVGLUFramebufferBGFX buffer = null;
+    private ResourceTracker.Resource resource = null;
     private final Paint paint = new Paint();
 
     // NOTE: width and height are in UI pixel space
@@ -265,6 +307,29 @@ public class VGraphics {
       return this;
     }
 
+    /**
+     * Restricts rasterization into the framebuffer to a region, until the next
+     * bind(). Must be called after bind().
+     *
+     * @param x Left position, in UI space
+     * @param y Top position, in UI space
+     * @param w Width, in UI space
+     * @param h Height, in UI space
+     * @return this
+     */
+    public Framebuffer scissor(float x, float y, float w, float h) {
+      // NOTE: round outwards to whole framebuffer pixels, and never pass a
+      // zero size because that disables the scissor altogether
+      final float scaleX = glx.getUIContentScaleX();
+      final float scaleY = glx.getUIContentScaleY();
+      final int x0 = Math.max(0, (int) Math.floor(x * scaleX));
+      final int y0 = Math.max(0, (int) Math.floor(y * scaleY));
+      final int x1 = (int) Math.ceil((x + w) * scaleX);
+      final int y1 = (int) Math.ceil((y + h) * scaleY);
+      bgfx_set_view_scissor(this.viewId, x0, y0, Math.max(1, x1 - x0), Math.max(1, y1 - y0));
+      return this;
+    }
+
     public void markForResize(float w, float h) {
       if (this.width != w || this.height != h) {
         this.width = w;
@@ -277,6 +342,10 @@ public class VGraphics {
       if (this.buffer != null) {
         nvgluDeleteFramebuffer(this.buffer);
       }
+      if (this.resource != null) {
+        this.resource.dispose();
+        this.resource = null;
+      }
 
       // NOTE: the framebuffer needs to be in framebuffer pixel space!
       // So we multiply our floating-point ui pixel dimensions by the
@@ -284,16 +353,20 @@ public class VGraphics {
       // we've got enough framebuffer pixels to cover it! Note that this
       // extra sub-pixel is okay, see the nvgBeginFrame() call where
       // the actual frame size is passed as a float.
-      this.buffer = nvgluCreateFramebuffer(vg,
-        (int) Math.ceil(this.width * glx.getUIContentScaleX()),
-        (int) Math.ceil(this.height * glx.getUIContentScaleY()),
-        this.imageFlags
-      );
+      final int bufferWidth = (int) Math.ceil(this.width * glx.getUIContentScaleX());
+      final int bufferHeight = (int) Math.ceil(this.height * glx.getUIContentScaleY());
+      this.buffer = nvgluCreateFramebuffer(vg, bufferWidth, bufferHeight, this.imageFlags);
 
       if (this.buffer == null) {
         throw new RuntimeException("nvgluCreateFramebuffer failed!! Not a good situation.");
       }
 
+      // NOTE: NanoVG framebuffers are RGBA8 color with a D24S8 depth-stencil attachment
+      this.resource = glx.resourceTracker.register(ResourceTracker.Category.FRAMEBUFFER,
+        "VGraphics.Framebuffer " + bufferWidth + "x" + bufferHeight,
+        8L * bufferWidth * bufferHeight
+      );
+
       // Note what happens here... the framebuffer is in framebuffer-pixel space. But
       // when we're going to paint it into another UI2dContext, those pixels will be in
       // UI-space. So the paint image pattern is in UI-space width/height
@@ -313,6 +386,8 @@ public class VGraphics {
   private final NVGColor fillColor = NVGColor.create();
   private final NVGColor strokeColor = NVGColor.create();
   private final Set<Framebuffer> allocatedBuffers = new HashSet<Framebuffer>();
+  private final Map<String, ImageResource> imageCache = new HashMap<String, ImageResource>();
+  private final List<GLXUtils.ResourceBuffer> fontData = new ArrayList<GLXUtils.ResourceBuffer>();
 
   public VGraphics(GLX glx) {
     this.glx = glx;
@@ -337,6 +412,10 @@ public class VGraphics {
 
   public void deleteFrameBuffer(Framebuffer framebuffer) {
     nvgluDeleteFramebuffer(framebuffer.buffer);
+    if (framebuffer.resource != null) {
+      framebuffer.resource.dispose();
+      framebuffer.resource = null;
+    }
     this.allocatedBuffers.remove(framebuffer);
   }
 
@@ -591,30 +670,74 @@ public class VGraphics {
   }
 
   public Image loadImage(String imagePath) throws IOException {
-    return createImageMem(GLXUtils.loadResource("images/" + imagePath), imagePath.contains("@2x."));
+    return loadImageResource("images/" + imagePath, imagePath.contains("@2x."));
   }
 
   public Image loadIcon(String iconPath) throws IOException {
-    return createImageMem(GLXUtils.loadResource("icons/" + iconPath), iconPath.contains("@2x."));
+    return loadImageResource("icons/" + iconPath, iconPath.contains("@2x."));
+  }
+
+  /**
+   * Loads an image, sharing the decoded NanoVG image with any other Image already
+   * loaded from the same path. Each caller gets its own Image object so that tint
+   * and paint are not shared, and the underlying image is deleted once every
+   * Image for the path has been disposed.
+   */
+  private Image loadImageResource(String path, boolean is2x) throws IOException {
+    ImageResource resource = this.imageCache.get(path);
+    if (resource == null) {
+      resource = new ImageResource(path, GLXUtils.loadResourceBuffer(path));
+      this.imageCache.put(path, resource);
+    }
+    ++resource.references;
+    return new Image(resource, is2x);
+  }
+
+  private void releaseImage(ImageResource resource) {
+    if (--resource.references == 0) {
+      this.imageCache.remove(resource.path);
+      resource.dispose();
+    }
+  }
+
+  /**
+   * Starts loading icons in the background, ahead of loadIcon() calls for them
+   *
+   * @param iconPaths Icon paths
+   * @return this
+   */
+  public VGraphics prefetchIcons(String ... iconPaths) {
+    for (String iconPath : iconPaths) {
+      if (!this.imageCache.containsKey("icons/" + iconPath)) {
+        GLXUtils.prefetchResources("icons/" + iconPath);
+      }
+    }
+    return this;
   }
 
-  public Font loadFont(String fontName, String fontPath) throws IOException {
-    return createFontMem(fontName, GLXUtils.loadResource("fonts/" + fontPath));
+  /**
+   * Starts loading fonts in the background, ahead of loadFont() calls for them
+   *
+   * @param fontPaths Font paths
+   * @return this
+   */
+  public VGraphics prefetchFonts(String ... fontPaths) {
+    for (String fontPath : fontPaths) {
+      GLXUtils.prefetchResources("fonts/" + fontPath);
+    }
+    return this;
   }
 
-  private Font createFontMem(String name, ByteBuffer fontData) {
-    int font = nvgCreateFontMem(this.vg, name, fontData, 0);
-    return new Font(font, name);
+  public Font loadFont(String fontName, String fontPath) throws IOException {
+    return createFontMem(fontName, GLXUtils.loadResourceBuffer("fonts/" + fontPath));
   }
 
-  private Image createImageMem(ByteBuffer imageData, boolean is2x) {
-    int image = nvgCreateImageMem(this.vg, 0, imageData);
-    try (MemoryStack stack = MemoryStack.stackPush()) {
-      IntBuffer width = stack.mallocInt(1);
-      IntBuffer height = stack.mallocInt(1);
-      nvgImageSize(this.vg, image, width, height);
-      return new Image(image, imageData, width.get(0), height.get(0), is2x);
-    }
+  private Font createFontMem(String name, GLXUtils.ResourceBuffer fontData) {
+    // NOTE: NanoVG reads glyphs out of the font data for as long as the context
+    // lives, so the data must never be released
+    this.fontData.add(fontData);
+    int font = nvgCreateFontMem(this.vg, name, fontData.getBuffer(), 0);
+    return new Font(font, name);
   }
 
   public VGraphics fontSize(float size) {
@@ -0,0 +1,42 @@
+$input a_texcoord0, i_data0
+$output v_texcoord0, v_color0
+
+/*
+ * Copyright 2011-2019 Branimir Karadzic. All rights reserved.
+ * License: https://github.com/bkaradzic/bgfx#license-bsd-2-clause
+ */
+
+#include "../common/common.sh"
+
+SAMPLER2D(s_colors, 1);
+
+uniform vec4 u_dimensions;
+uniform vec4 u_colorDimensions;
+
+#define u_screenWidth u_dimensions.x
+#define u_screenHeight u_dimensions.y
+#define u_aspectRatio u_dimensions.z
+#define u_pointScale u_dimensions.w
+
+#define u_colorWidth u_colorDimensions.x
+#define u_colorHeight u_colorDimensions.y
+#define u_colorInvWidth u_colorDimensions.z
+#define u_colorInvHeight u_colorDimensions.w
+
+// Per-instance data:
+//   i_data0.xyz - point center
+//   i_data0.w   - point index, one texel per point in s_colors
+void main()
+{
+  gl_Position =
+    mul(u_modelViewProj, vec4(i_data0.xyz, 1.0)) +
+    mul(u_pointScale, vec4(vec2(1.0, u_aspectRatio) * (a_texcoord0 - vec2(0.5, 0.5)), 0.0, 0.0));
+
+  // Color texture width is a power of two, so this math is exact
+  float row = floor(i_data0.w * u_colorInvWidth);
+  float col = i_data0.w - row * u_colorWidth;
+  vec2 texel = vec2((col + 0.5) * u_colorInvWidth, (row + 0.5) * u_colorInvHeight);
+
+  v_texcoord0 = a_texcoord0;
+  v_color0 = texture2DLod(s_colors, texel, 0.0);
+}